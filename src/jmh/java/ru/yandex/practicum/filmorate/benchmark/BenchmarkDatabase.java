@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Встроенная H2 для бенчмарков, заполненная синтетическими пользователями, фильмами, лайками и друзьями.
+ * Популярность фильмов распределена неравномерно, чтобы были «хиты» с большим числом лайков.
+ */
+public class BenchmarkDatabase {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int GENRES = 6;
+    private static final int RATINGS = 5;
+
+    private final HikariDataSource dataSource;
+    private final JdbcTemplate jdbc;
+
+    public BenchmarkDatabase(String name) {
+        this("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", 10);
+    }
+
+    /**
+     * База по произвольному URL H2 (файл, сервер) с пулом фиксированного размера.
+     */
+    public BenchmarkDatabase(String url, int poolSize) {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setMinimumIdle(poolSize);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        jdbc = new JdbcTemplate(dataSource);
+    }
+
+    public String getUrl() {
+        return dataSource.getJdbcUrl();
+    }
+
+    public HikariDataSource getDataSource() {
+        return dataSource;
+    }
+
+    public JdbcTemplate getJdbc() {
+        return jdbc;
+    }
+
+    public void close() {
+        dataSource.close();
+    }
+
+    public void seed(int users, int films, int likesPerUser, int friendsPerUser, long seed) {
+        Random random = new Random(seed);
+        List<Object[]> rows = new ArrayList<>();
+        for (long id = 1; id <= users; id++) {
+            rows.add(new Object[]{id, "user" + id + "@mail.ru", "user" + id, "User " + id,
+                    Date.valueOf(LocalDate.of(1970, 1, 1).plusDays(random.nextInt(15000)))});
+        }
+        batch("INSERT INTO users (user_id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)", rows);
+
+        for (long id = 1; id <= films; id++) {
+            rows.add(new Object[]{id, "Film " + id, "Description " + id,
+                    Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(25000))),
+                    60 + random.nextInt(120), 1 + random.nextInt(RATINGS)});
+        }
+        batch("INSERT INTO films (film_id, name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?, ?)", rows);
+
+        for (long id = 1; id <= films; id++) {
+            int first = 1 + random.nextInt(GENRES);
+            rows.add(new Object[]{id, first});
+            if (random.nextBoolean()) {
+                rows.add(new Object[]{id, first % GENRES + 1});
+            }
+        }
+        batch("INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows);
+
+        for (long userId = 1; userId <= users; userId++) {
+            Set<Long> liked = new HashSet<>();
+            while (liked.size() < Math.min(likesPerUser, films)) {
+                double skew = random.nextDouble();
+                liked.add(1 + (long) (films * skew * skew));
+            }
+            for (Long filmId : liked) {
+                rows.add(new Object[]{filmId, userId});
+            }
+            flushIfFull("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)", rows);
+        }
+        batch("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)", rows);
+        jdbc.update("UPDATE films f SET likes_count = (SELECT COUNT(*) FROM user_likes ul WHERE ul.film_id = f.film_id)");
+
+        for (long userId = 1; userId <= users; userId++) {
+            Set<Long> friends = new HashSet<>();
+            while (friends.size() < Math.min(friendsPerUser, users - 1)) {
+                long friendId = 1 + random.nextInt(users);
+                if (friendId != userId) {
+                    friends.add(friendId);
+                }
+            }
+            for (Long friendId : friends) {
+                rows.add(new Object[]{userId, friendId, "CONFIRMED"});
+            }
+            flushIfFull("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, ?)", rows);
+        }
+        batch("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, ?)", rows);
+    }
+
+    private void flushIfFull(String sql, List<Object[]> rows) {
+        if (rows.size() >= BATCH_SIZE) {
+            batch(sql, rows);
+        }
+    }
+
+    private void batch(String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+        rows.clear();
+    }
+}
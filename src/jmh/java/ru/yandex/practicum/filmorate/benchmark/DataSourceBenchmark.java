@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.h2.tools.Server;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Пропускная способность записи (создание фильма, лайк) на файловой H2 при настройках профиля prod:
+ * размер пула, кэш разобранных запросов, кэш страниц, задержка записи MVStore, встроенный или серверный режим.
+ * Параметры удобнее менять по одному, остальные фиксируя, например:
+ * -Djmh.args="-p mode=embedded -p poolSize=16 -p cacheSizeKb=65536 -p writeDelayMs=500 DataSourceBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Threads(16)
+@Fork(1)
+public class DataSourceBenchmark {
+
+    @Param({"embedded", "server"})
+    private String mode;
+    @Param({"4", "16"})
+    private int poolSize;
+    @Param({"0", "64"})
+    private int queryCacheSize;
+    @Param({"16384", "65536"})
+    private int cacheSizeKb;
+    @Param({"0", "500"})
+    private int writeDelayMs;
+    @Param("1000")
+    private int users;
+    @Param("1000")
+    private int films;
+
+    private final AtomicLong likes = new AtomicLong();
+    private Path directory;
+    private Server server;
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("filmorate-bench");
+        String location;
+        if ("server".equals(mode)) {
+            server = Server.createTcpServer("-tcpPort", String.valueOf(freePort()), "-ifNotExists",
+                    "-baseDir", directory.toString()).start();
+            location = server.getURL() + "/bench";
+        } else {
+            location = "file:" + directory.resolve("bench");
+        }
+        String url = "jdbc:h2:" + location + ";CACHE_SIZE=" + cacheSizeKb + ";QUERY_CACHE_SIZE=" + queryCacheSize
+                + ";WRITE_DELAY=" + writeDelayMs;
+        database = new BenchmarkDatabase(url, poolSize);
+        database.seed(users, films, 0, 0, 42);
+        JdbcTemplate jdbc = database.getJdbc();
+        jdbc.execute("ALTER TABLE films ALTER COLUMN film_id RESTART WITH " + (films + 1));
+        FilmLeaderboard leaderboard = new FilmLeaderboard(jdbc);
+        LikeMatrix likeMatrix = new LikeMatrix(jdbc, 20);
+        filmStorage = new FilmDbStorage(jdbc, new FilmRowMapper(), new FilmHydrator(jdbc, QueryMetrics.NOOP), leaderboard,
+                likeMatrix, new CatalogVersions(), QueryMetrics.NOOP, ReplicaRouting.PRIMARY_ONLY);
+        leaderboard.rebuild();
+        likeMatrix.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        database.close();
+        if (server != null) {
+            server.stop();
+        }
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public Film createFilm() {
+        Film film = new Film("Film", "Description", LocalDate.of(2000, 1, 1), 120, new Rating(1, null));
+        film.setGenres(new LinkedHashSet<>(List.of(new Genre(1, null))));
+        return filmStorage.createFilm(film);
+    }
+
+    /**
+     * Каждый вызов ставит новый лайк: пары (фильм, пользователь) перебираются без повторов.
+     */
+    @Benchmark
+    public void addLike() {
+        long next = likes.getAndIncrement();
+        filmStorage.addLike(next % films + 1, next / films % users + 1);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
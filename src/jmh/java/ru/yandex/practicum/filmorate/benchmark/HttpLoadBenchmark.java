@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Нагрузочный тест: приложение целиком, HTTP-клиенты в {@code @Threads} потоках.
+ * Сравнивает пропускную способность на потоках Tomcat и на виртуальных потоках (параметр virtualThreads)
+ * при числе одновременных запросов больше, чем пул потоков Tomcat (200) и пул соединений Hikari.
+ * Пример: -Djmh.args="-p poolSize=10 -t 512 HttpLoadBenchmark".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(512)
+@Fork(value = 1, jvmArgsAppend = "-Djdk.tracePinnedThreads=short")
+public class HttpLoadBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+    @Param("10")
+    private int poolSize;
+    @Param("10000")
+    private int users;
+    @Param("5000")
+    private int films;
+    @Param("20")
+    private int likesPerUser;
+    @Param("20")
+    private int friendsPerUser;
+
+    private BenchmarkDatabase database;
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private HttpRequest popular;
+    private String baseUrl;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("load" + System.nanoTime());
+        database.seed(users, films, likesPerUser, friendsPerUser, 42);
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .run("--server.port=0",
+                        "--spring.datasource.url=" + database.getUrl(),
+                        "--spring.datasource.hikari.maximum-pool-size=" + poolSize,
+                        "--spring.threads.virtual.enabled=" + virtualThreads,
+                        "--logging.level.root=WARN",
+                        "--logging.level.org.zalando.logbook=OFF");
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        popular = HttpRequest.newBuilder(URI.create(baseUrl + "/films/popular?count=10")).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+        database.close();
+    }
+
+    @Benchmark
+    public int popularFilms() throws IOException, InterruptedException {
+        return send(popular);
+    }
+
+    @Benchmark
+    public int friends() throws IOException, InterruptedException {
+        long userId = 1 + ThreadLocalRandom.current().nextInt(users);
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/users/" + userId + "/friends")).build());
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.uri() + " вернул " + response.statusCode());
+        }
+        return response.body().length;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.h2.tools.SimpleResultSet;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость маппинга строк в Film и User без обращения к БД: ResultSet заполнен в памяти.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RowMapperBenchmark {
+
+    @Param("1000")
+    private int rows;
+
+    private final FilmRowMapper filmRowMapper = new FilmRowMapper();
+    private final UserRowMapper userRowMapper = new UserRowMapper();
+    private SimpleResultSet filmRows;
+    private SimpleResultSet userRows;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filmRows = new SimpleResultSet();
+        filmRows.addColumn("film_id", Types.BIGINT, 19, 0);
+        filmRows.addColumn("name", Types.VARCHAR, 255, 0);
+        filmRows.addColumn("description", Types.VARCHAR, 255, 0);
+        filmRows.addColumn("release_date", Types.DATE, 10, 0);
+        filmRows.addColumn("duration", Types.INTEGER, 10, 0);
+        filmRows.addColumn("mpa_id", Types.INTEGER, 10, 0);
+        filmRows.addColumn("rating", Types.VARCHAR, 255, 0);
+        filmRows.addColumn("likes_count", Types.INTEGER, 10, 0);
+        filmRows.setAutoClose(false);
+        userRows = new SimpleResultSet();
+        userRows.addColumn("user_id", Types.BIGINT, 19, 0);
+        userRows.addColumn("email", Types.VARCHAR, 255, 0);
+        userRows.addColumn("login", Types.VARCHAR, 255, 0);
+        userRows.addColumn("name", Types.VARCHAR, 255, 0);
+        userRows.addColumn("birthday", Types.DATE, 10, 0);
+        userRows.setAutoClose(false);
+        Date date = Date.valueOf(LocalDate.of(2000, 1, 1));
+        for (long id = 1; id <= rows; id++) {
+            filmRows.addRow(id, "Film " + id, "Description " + id, date, 120, 1, "G", (int) (id % 100));
+            userRows.addRow(id, "user" + id + "@mail.ru", "user" + id, "User " + id, date);
+        }
+    }
+
+    @Benchmark
+    public void mapFilms(Blackhole blackhole) throws SQLException {
+        filmRows.beforeFirst();
+        int rowNum = 0;
+        while (filmRows.next()) {
+            blackhole.consume(filmRowMapper.mapRow(filmRows, rowNum++));
+        }
+    }
+
+    @Benchmark
+    public void mapUsers(Blackhole blackhole) throws SQLException {
+        userRows.beforeFirst();
+        int rowNum = 0;
+        while (userRows.next()) {
+            blackhole.consume(userRowMapper.mapRow(userRows, rowNum++));
+        }
+    }
+}
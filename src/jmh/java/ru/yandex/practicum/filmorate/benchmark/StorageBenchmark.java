@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути FilmDbStorage и UserDbStorage на заполненной H2.
+ * Объем данных задается параметрами, например: -p users=100000 -p films=20000.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+
+    @Param("1000")
+    private int users;
+    @Param("1000")
+    private int films;
+    @Param("20")
+    private int likesPerUser;
+    @Param("10")
+    private int friendsPerUser;
+    @Param("10")
+    private int popularCount;
+
+    private BenchmarkDatabase database;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private long nextFilmId;
+    private long nextUserId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("storage" + System.nanoTime());
+        database.seed(users, films, likesPerUser, friendsPerUser, 42);
+        JdbcTemplate jdbc = database.getJdbc();
+        FilmLeaderboard leaderboard = new FilmLeaderboard(jdbc);
+        LikeMatrix likeMatrix = new LikeMatrix(jdbc, 20);
+        filmStorage = new FilmDbStorage(jdbc, new FilmRowMapper(), new FilmHydrator(jdbc, QueryMetrics.NOOP), leaderboard,
+                likeMatrix, new CatalogVersions(), QueryMetrics.NOOP, ReplicaRouting.PRIMARY_ONLY);
+        UserRowMapper userRowMapper = new UserRowMapper();
+        FriendGraph friendGraph = new FriendGraph(jdbc, 100_000);
+        userStorage = new UserDbStorage(jdbc, userRowMapper, new UserWithFriendsExtractor(userRowMapper),
+                friendGraph, QueryMetrics.NOOP, ReplicaRouting.PRIMARY_ONLY);
+        leaderboard.rebuild();
+        likeMatrix.rebuild();
+        friendGraph.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Collection<Film> getAllFilms() {
+        return filmStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public Collection<Film> showMostLikedFilms() {
+        return filmStorage.showMostLikedFilms(popularCount);
+    }
+
+    @Benchmark
+    public Collection<Film> showMostLikedFilmsCounts() {
+        return filmStorage.showMostLikedFilms(popularCount, false);
+    }
+
+    @Benchmark
+    public Optional<Film> findFilmById() {
+        nextFilmId = nextFilmId % films + 1;
+        return filmStorage.findFilmById(nextFilmId);
+    }
+
+    @Benchmark
+    public List<Long> findRecommendedFilmIds() {
+        nextUserId = nextUserId % users + 1;
+        return filmStorage.findRecommendedFilmIds(nextUserId, popularCount);
+    }
+
+    @Benchmark
+    public List<Long> findSuggestedFriendIds() {
+        nextUserId = nextUserId % users + 1;
+        return userStorage.findSuggestedFriendIds(nextUserId, popularCount);
+    }
+
+    @Benchmark
+    public Collection<User> showCommonFriends() {
+        nextUserId = nextUserId % (users - 1) + 1;
+        return userStorage.showCommonFriends(nextUserId, nextUserId + 1);
+    }
+}
@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.web.context.request.WebRequest;
+import ru.yandex.practicum.filmorate.storage.index.Version;
+
+/**
+ * Условные GET по версии данных: ETag и Last-Modified проставляются в ответ, а при совпадении
+ * с If-None-Match или If-Modified-Since уже выставлен статус 304 и тело формировать не нужно.
+ */
+final class ConditionalRequests {
+
+    private ConditionalRequests() {
+    }
+
+    static boolean notModified(WebRequest request, Version version) {
+        return request.checkNotModified(version.etag(), version.lastModified());
+    }
+}
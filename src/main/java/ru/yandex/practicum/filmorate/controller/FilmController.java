@@ -1,20 +1,37 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
 import ru.yandex.practicum.filmorate.service.FilmService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 
 @RestController
 @RequestMapping("/films")
 public class FilmController {
+    private static final String LIKERS = "likers";
+
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
+    private final PopularFilmsResponseCache popularFilms;
 
-    public FilmController(FilmService filmService) {
+    public FilmController(FilmService filmService, ObjectMapper objectMapper, PopularFilmsResponseCache popularFilms) {
         this.filmService = filmService;
+        this.objectMapper = objectMapper;
+        this.popularFilms = popularFilms;
     }
 
     @PostMapping
@@ -28,13 +45,40 @@ public class FilmController {
     }
 
     @GetMapping
-    public Collection<Film> getAllFilms() {
-        return filmService.getAllFilms();
+    public Collection<Film> getAllFilms(@RequestParam(required = false) Long after,
+                                        @RequestParam(required = false) Integer limit,
+                                        @RequestParam(required = false) String include,
+                                        WebRequest request) {
+        boolean withLikers = withLikers(include);
+        if (ConditionalRequests.notModified(request, filmService.getFilmsVersion())) {
+            return null;
+        }
+        if (after == null && limit == null) {
+            return filmService.getAllFilms(withLikers);
+        }
+        return filmService.getFilmsPage(after == null ? 0 : after, limit == null ? FilmService.DEFAULT_PAGE_SIZE : limit,
+                withLikers);
+    }
+
+    @GetMapping(params = "format=ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllFilms(@RequestParam(defaultValue = "0") long after,
+                                                                @RequestParam(required = false) String include,
+                                                                WebRequest request) {
+        boolean withLikers = withLikers(include);
+        if (ConditionalRequests.notModified(request, filmService.getFilmsVersion())) {
+            return null;
+        }
+        return NdjsonResponses.<Film>stream(objectMapper, action -> filmService.streamAllFilms(after, withLikers, action));
     }
 
     @GetMapping("/{id}")
-    public Film findFilmById(@PathVariable("id") Long id) {
-        return filmService.getFilmById(id);
+    public Film findFilmById(@PathVariable("id") Long id, @RequestParam(required = false) String include,
+                             WebRequest request) {
+        boolean withLikers = withLikers(include);
+        if (ConditionalRequests.notModified(request, filmService.getFilmVersion(id))) {
+            return null;
+        }
+        return filmService.getFilmById(id, withLikers);
     }
 
     @PutMapping("/{id}/like/{userId}")
@@ -42,6 +86,16 @@ public class FilmController {
         filmService.addLike(filmId, userId);
     }
 
+    @PostMapping(value = "/likes", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult addLikes(@RequestBody List<Like> likes) {
+        return filmService.addLikes(likes);
+    }
+
+    @PostMapping(value = "/likes", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public BulkResult addLikesNdjson(InputStream body) throws IOException {
+        return filmService.addLikes(NdjsonRequests.read(objectMapper, body, Like.class));
+    }
+
     @DeleteMapping("/{id}")
     public void deleteFilm(@PathVariable("id") Long filmId) {
         filmService.deleteFilm(filmId);
@@ -53,7 +107,30 @@ public class FilmController {
     }
 
     @GetMapping("/popular")
-    public Collection<Film> showMostLikedFilms(@RequestParam(defaultValue = "10") int count) {
-        return filmService.showMostLikedFilms(count);
+    public ResponseEntity<byte[]> showMostLikedFilms(@RequestParam(defaultValue = "10") int count,
+                                                     @RequestParam(required = false) String include,
+                                                     WebRequest request) {
+        boolean withLikers = withLikers(include);
+        if (ConditionalRequests.notModified(request, filmService.getFilmsVersion())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(popularFilms.get(count, withLikers));
+    }
+
+    /**
+     * Фильмы отдаются с likesCount без списка лайкнувших; include=likers добавляет idOfUsersWhoLiked.
+     */
+    private static boolean withLikers(String include) {
+        if (include == null || include.isBlank()) {
+            return false;
+        }
+        for (String part : include.split(",")) {
+            if (!LIKERS.equals(part.trim())) {
+                throw new ValidateException("Неизвестное значение include: " + part.trim());
+            }
+        }
+        return true;
     }
 }
@@ -5,6 +5,7 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.filmModel.Genre;
 import ru.yandex.practicum.filmorate.service.GenreService;
 
@@ -17,12 +18,18 @@ public class GenreController {
     private final GenreService genreService;
 
     @GetMapping
-    public Collection<Genre> getAllGenres() {
+    public Collection<Genre> getAllGenres(WebRequest request) {
+        if (ConditionalRequests.notModified(request, genreService.getVersion())) {
+            return null;
+        }
         return genreService.getAllGenres();
     }
 
     @GetMapping("/{id}")
-    public Genre getGenreById(@PathVariable int id) {
+    public Genre getGenreById(@PathVariable int id, WebRequest request) {
+        if (ConditionalRequests.notModified(request, genreService.getVersion())) {
+            return null;
+        }
         return genreService.getGenreById(id);
     }
 }
@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Тело запроса в формате NDJSON: по одному объекту в строке, пустые строки пропускаются.
+ * Строка, которую не удалось разобрать, становится null, чтобы сервис отклонил ее, не прерывая остальные.
+ */
+final class NdjsonRequests {
+
+    private NdjsonRequests() {
+    }
+
+    static <T> List<T> read(ObjectMapper objectMapper, InputStream body, Class<T> type) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(type);
+        List<T> items = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        while ((line = lines.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                items.add(reader.readValue(line));
+            } catch (JsonProcessingException e) {
+                items.add(null);
+            }
+        }
+        return items;
+    }
+}
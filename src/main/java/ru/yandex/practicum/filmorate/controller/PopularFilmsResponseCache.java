@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.storage.index.Version;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+/**
+ * Готовый JSON ответа /films/popular по count и include. Запись годна, пока не изменилась версия каталога,
+ * то есть до первого изменения фильмов или лайков; так горячий путь обходится без хранилища и Jackson.
+ * Версия снимается до чтения фильмов: если запись успеет пройти между ними, запись просто устареет раньше.
+ */
+@Component
+public class PopularFilmsResponseCache {
+
+    private final FilmService filmService;
+    private final ObjectWriter writer;
+    private final Cache<Key, Entry> responses;
+
+    public PopularFilmsResponseCache(FilmService filmService, ObjectMapper objectMapper,
+                                     @Value("${filmorate.cache.popular.maximum-size:64}") long maximumSize,
+                                     @Value("${filmorate.cache.popular.expire-after-write:PT1M}") Duration expireAfterWrite,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        this.filmService = filmService;
+        this.writer = objectMapper.writer();
+        this.responses = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, responses, "popularFilms"));
+    }
+
+    public byte[] get(int count, boolean withLikers) {
+        Key key = new Key(count, withLikers);
+        Version version = filmService.getFilmsVersion();
+        Entry cached = responses.getIfPresent(key);
+        if (cached != null && cached.version().equals(version)) {
+            return cached.body();
+        }
+        byte[] body = encode(count, withLikers);
+        responses.put(key, new Entry(version, body));
+        return body;
+    }
+
+    private byte[] encode(int count, boolean withLikers) {
+        try {
+            return writer.writeValueAsBytes(filmService.showMostLikedFilms(count, withLikers));
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private record Key(int count, boolean withLikers) {
+    }
+
+    private record Entry(Version version, byte[] body) {
+    }
+}
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import ru.yandex.practicum.filmorate.model.filmModel.Rating;
 import ru.yandex.practicum.filmorate.service.RatingService;
 
@@ -19,12 +20,18 @@ public class RatingController {
     }
 
     @GetMapping
-    public Collection<Rating> getAllRatings() {
+    public Collection<Rating> getAllRatings(WebRequest request) {
+        if (ConditionalRequests.notModified(request, ratingService.getVersion())) {
+            return null;
+        }
         return ratingService.getAllRatings();
     }
 
     @GetMapping("/{id}")
-    public Rating getRatingById(@PathVariable int id) {
+    public Rating getRatingById(@PathVariable int id, WebRequest request) {
+        if (ConditionalRequests.notModified(request, ratingService.getVersion())) {
+            return null;
+        }
         return ratingService.getRatingById(id);
     }
 }
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+
+/**
+ * POST /actuator/referencedata перечитывает жанры и рейтинги после изменения справочников в БД.
+ * Защиты у эндпоинта нет, поэтому по умолчанию он не открыт по HTTP: его нужно явно добавить
+ * в management.endpoints.web.exposure.include там, где /actuator закрыт от внешнего доступа.
+ */
+@Component
+@Endpoint(id = "referencedata")
+public class ReferenceDataEndpoint {
+
+    private final ReferenceDataRegistry registry;
+
+    public ReferenceDataEndpoint(ReferenceDataRegistry registry) {
+        this.registry = registry;
+    }
+
+    @WriteOperation
+    public void reload() {
+        registry.reload();
+    }
+}
@@ -1,21 +1,36 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
 import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Collection;
+import java.util.List;
 
 @RestController
 @RequestMapping("/users")
 @Validated
 public class UserController {
     private final UserService userService;
+    private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, FilmService filmService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.filmService = filmService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
@@ -29,8 +44,17 @@ public class UserController {
     }
 
     @GetMapping
-    public Collection<User> getAllUsers() {
-        return userService.getAllUsers();
+    public Collection<User> getAllUsers(@RequestParam(required = false) Long after,
+                                        @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.getAllUsers();
+        }
+        return userService.getUsersPage(after == null ? 0 : after, limit == null ? UserService.DEFAULT_PAGE_SIZE : limit);
+    }
+
+    @GetMapping(params = "format=ndjson")
+    public ResponseEntity<StreamingResponseBody> streamAllUsers(@RequestParam(defaultValue = "0") long after) {
+        return NdjsonResponses.<User>stream(objectMapper, action -> userService.streamAllUsers(after, action));
     }
 
     @GetMapping("/{id}")
@@ -43,18 +67,48 @@ public class UserController {
         userService.addFriend(userId, friendId);
     }
 
+    @PostMapping(value = "/friends", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public BulkResult addFriends(@RequestBody List<Friendship> friendships) {
+        return userService.addFriends(friendships);
+    }
+
+    @PostMapping(value = "/friends", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public BulkResult addFriendsNdjson(InputStream body) throws IOException {
+        return userService.addFriends(NdjsonRequests.read(objectMapper, body, Friendship.class));
+    }
+
     @DeleteMapping("/{id}/friends/{friendId}")
     public void deleteFriend(@PathVariable("id") Long userId, @PathVariable("friendId") Long friendId) {
         userService.deleteFriend(userId, friendId);
     }
 
     @GetMapping("/{id}/friends")
-    public Collection<User> getFriends(@PathVariable ("id") Long id) {
-        return userService.showFriends(id);
+    public Collection<User> getFriends(@PathVariable ("id") Long id,
+                                       @RequestParam(defaultValue = "false") boolean withFriends) {
+        return userService.showFriends(id, withFriends);
+    }
+
+    @GetMapping("/{id}/friends/suggestions")
+    public Collection<User> getFriendSuggestions(@PathVariable("id") Long userId,
+                                                 @RequestParam(defaultValue = "10") int count) {
+        return userService.getFriendSuggestions(userId, count);
     }
 
     @GetMapping("/{id}/friends/common/{otherId}")
-    public Collection<User> showCommonFriends(@PathVariable("id") Long userId, @PathVariable("otherId") Long friendId) {
-        return userService.showCommonFriends(userId, friendId);
+    public Collection<User> showCommonFriends(@PathVariable("id") Long userId, @PathVariable("otherId") Long friendId,
+                                              @RequestParam(defaultValue = "false") boolean withFriends) {
+        return userService.showCommonFriends(userId, friendId, withFriends);
+    }
+
+    @GetMapping("/common")
+    public Collection<User> showCommonFriends(@RequestParam List<Long> ids,
+                                              @RequestParam(defaultValue = "false") boolean withFriends) {
+        return userService.showCommonFriends(ids, withFriends);
+    }
+
+    @GetMapping("/{id}/recommendations")
+    public Collection<Film> getRecommendations(@PathVariable("id") Long userId,
+                                               @RequestParam(defaultValue = "10") int count) {
+        return filmService.getRecommendations(userId, count);
     }
 }
@@ -2,6 +2,7 @@ package ru.yandex.practicum.filmorate.exceptions;
 
 import jakarta.validation.ConstraintViolationException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
@@ -23,6 +24,18 @@ public class ErrorHandler {
         return new ErrorResponse("Ошибка валидации", exception.getMessage());
     }
 
+    @ExceptionHandler(ServiceUnavailableException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleServiceUnavailableException(final ServiceUnavailableException exception) {
+        return new ErrorResponse("Сервис перегружен", exception.getMessage());
+    }
+
+    @ExceptionHandler(CannotGetJdbcConnectionException.class)
+    @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+    public ErrorResponse handleCannotGetJdbcConnectionException(final CannotGetJdbcConnectionException exception) {
+        return new ErrorResponse("Сервис перегружен", "Нет свободных соединений с БД, повторите запрос позже");
+    }
+
     @ExceptionHandler(Throwable.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public ErrorResponse serverException(Throwable exception) {
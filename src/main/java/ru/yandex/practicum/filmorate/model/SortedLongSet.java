@@ -0,0 +1,369 @@
+package ru.yandex.practicum.filmorate.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.LongConsumer;
+
+/**
+ * Множество long в отсортированном массиве без упаковки в Long: 8 байт на элемент вместо ~50 у HashSet&lt;Long&gt;,
+ * поиск двоичный, пересечение — слиянием без промежуточных коллекций.
+ * Реализует Set&lt;Long&gt; и сериализуется в JSON обычным массивом чисел.
+ * Добавление в конец (по возрастанию) не сдвигает элементы, поэтому выборки стоит упорядочивать по id.
+ * Не потокобезопасно, синхронизацию обеспечивает владелец.
+ */
+@JsonSerialize(using = SortedLongSet.Serializer.class)
+public class SortedLongSet extends AbstractSet<Long> {
+
+    private static final long[] EMPTY = new long[0];
+    private static final int GALLOP_RATIO = 16;
+
+    private long[] values = EMPTY;
+    private int size;
+
+    public SortedLongSet() {
+    }
+
+    private SortedLongSet(long[] values, int size) {
+        this.values = values;
+        this.size = size;
+    }
+
+    /**
+     * Множество из id коллекции; если это уже SortedLongSet, он возвращается как есть.
+     */
+    public static SortedLongSet from(Collection<Long> ids) {
+        if (ids instanceof SortedLongSet set) {
+            return set;
+        }
+        return copyOf(ids);
+    }
+
+    /**
+     * Новое множество из id коллекции. Элементы null, например из JSON-массива [null], пропускаются.
+     */
+    public static SortedLongSet copyOf(Collection<Long> ids) {
+        if (ids instanceof SortedLongSet set) {
+            return set.copy();
+        }
+        long[] values = new long[ids.size()];
+        int count = 0;
+        for (Long id : ids) {
+            if (id != null) {
+                values[count++] = id;
+            }
+        }
+        return of(Arrays.copyOf(values, count));
+    }
+
+    /**
+     * Множество поверх переданного массива: массив сортируется и очищается от повторов на месте.
+     */
+    public static SortedLongSet of(long... values) {
+        Arrays.sort(values);
+        int size = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (size == 0 || values[i] != values[size - 1]) {
+                values[size++] = values[i];
+            }
+        }
+        return new SortedLongSet(size == values.length ? values : Arrays.copyOf(values, size), size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        Objects.checkIndex(index, size);
+        return values[index];
+    }
+
+    public boolean contains(long value) {
+        return Arrays.binarySearch(values, 0, size, value) >= 0;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        return value instanceof Long id && contains(id.longValue());
+    }
+
+    public boolean add(long value) {
+        if (size == 0 || value > values[size - 1]) {
+            ensureCapacity(size + 1);
+            values[size++] = value;
+            return true;
+        }
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if (position >= 0) {
+            return false;
+        }
+        int insertAt = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(values, insertAt, values, insertAt + 1, size - insertAt);
+        values[insertAt] = value;
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean add(Long value) {
+        return add(value.longValue());
+    }
+
+    /**
+     * Добавляет всю коллекцию одним слиянием отсортированных массивов вместо вставки по одному.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Long> ids) {
+        SortedLongSet other = ids instanceof SortedLongSet set ? set : copyOf(new ArrayList<>(ids));
+        if (other.size == 0) {
+            return false;
+        }
+        long[] merged = new long[size + other.size];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < size || j < other.size) {
+            long next;
+            if (j == other.size || (i < size && values[i] < other.values[j])) {
+                next = values[i++];
+            } else if (i == size || other.values[j] < values[i]) {
+                next = other.values[j++];
+            } else {
+                next = values[i++];
+                j++;
+            }
+            merged[count++] = next;
+        }
+        boolean changed = count != size;
+        values = merged;
+        size = count;
+        return changed;
+    }
+
+    public boolean remove(long value) {
+        int position = Arrays.binarySearch(values, 0, size, value);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(values, position + 1, values, position, size - position - 1);
+        size--;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        return value instanceof Long id && remove(id.longValue());
+    }
+
+    @Override
+    public void clear() {
+        values = EMPTY;
+        size = 0;
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return new Iterator<>() {
+            private int next;
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public Long next() {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                last = next++;
+                return values[last];
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0) {
+                    throw new IllegalStateException();
+                }
+                System.arraycopy(values, last + 1, values, last, size - last - 1);
+                size--;
+                next = last;
+                last = -1;
+            }
+        };
+    }
+
+    public void forEachLong(LongConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(values[i]);
+        }
+    }
+
+    /**
+     * Пересечение нескольких множеств. Множества пересекаются от меньшего к большему,
+     * так что промежуточный результат не больше наименьшего из них; пустой результат завершает обход.
+     */
+    public static SortedLongSet intersection(Collection<SortedLongSet> sets) {
+        if (sets.isEmpty()) {
+            return new SortedLongSet();
+        }
+        List<SortedLongSet> bySize = new ArrayList<>(sets);
+        bySize.sort(Comparator.comparingInt(SortedLongSet::size));
+        SortedLongSet result = bySize.get(0).copy();
+        for (int i = 1; i < bySize.size() && !result.isEmpty(); i++) {
+            result = result.intersect(bySize.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Новое множество из общих элементов. Если одно множество намного меньше другого, элементы меньшего
+     * ищутся в большем галопом от позиции предыдущего совпадения, иначе — слиянием без ветвлений в теле цикла.
+     */
+    public SortedLongSet intersect(SortedLongSet other) {
+        SortedLongSet small = size <= other.size ? this : other;
+        SortedLongSet large = small == this ? other : this;
+        if (small.size == 0) {
+            return new SortedLongSet();
+        }
+        long[] common = new long[small.size];
+        int count = 0;
+        if ((long) small.size * GALLOP_RATIO < large.size) {
+            int from = 0;
+            for (int i = 0; i < small.size && from < large.size; i++) {
+                int position = gallop(large.values, from, large.size, small.values[i]);
+                if (position >= 0) {
+                    common[count++] = small.values[i];
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < small.size && j < large.size) {
+                long a = small.values[i];
+                long b = large.values[j];
+                common[count] = a;
+                count += a == b ? 1 : 0;
+                i += a <= b ? 1 : 0;
+                j += a >= b ? 1 : 0;
+            }
+        }
+        return new SortedLongSet(common, count).trimToSize();
+    }
+
+    /**
+     * Размер пересечения. Если одно множество намного меньше другого, элементы меньшего
+     * ищутся в большем галопом с сужающейся нижней границей, иначе — линейное слияние.
+     */
+    public int intersectionSize(SortedLongSet other) {
+        SortedLongSet small = size <= other.size ? this : other;
+        SortedLongSet large = small == this ? other : this;
+        if (small.size == 0) {
+            return 0;
+        }
+        int count = 0;
+        if ((long) small.size * GALLOP_RATIO < large.size) {
+            int from = 0;
+            for (int i = 0; i < small.size && from < large.size; i++) {
+                int position = gallop(large.values, from, large.size, small.values[i]);
+                if (position >= 0) {
+                    count++;
+                    from = position + 1;
+                } else {
+                    from = -position - 1;
+                }
+            }
+            return count;
+        }
+        int i = 0;
+        int j = 0;
+        while (i < small.size && j < large.size) {
+            long a = small.values[i];
+            long b = large.values[j];
+            if (a == b) {
+                count++;
+                i++;
+                j++;
+            } else if (a < b) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return count;
+    }
+
+    public void copyTo(long[] target, int offset) {
+        System.arraycopy(values, 0, target, offset, size);
+    }
+
+    public SortedLongSet copy() {
+        return new SortedLongSet(Arrays.copyOf(values, size), size);
+    }
+
+    public long[] toLongArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Освобождает запас емкости, оставшийся после поэлементного наполнения.
+     */
+    public SortedLongSet trimToSize() {
+        if (values.length != size) {
+            values = size == 0 ? EMPTY : Arrays.copyOf(values, size);
+        }
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (int i = 0; i < size; i++) {
+            hash += Long.hashCode(values[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Поиск key в values[from, to) с шагом, удваивающимся от from, и двоичным поиском в последнем шаге.
+     * Результат как у Arrays.binarySearch. Близкие к from элементы находятся за O(log расстояния).
+     */
+    private static int gallop(long[] values, int from, int to, long key) {
+        int low = from;
+        int step = 1;
+        while (low + step < to && values[low + step] < key) {
+            low += step;
+            step <<= 1;
+        }
+        return Arrays.binarySearch(values, low, Math.min(low + step + 1, to), key);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            values = Arrays.copyOf(values, Math.max(4, Math.max(capacity, values.length + (values.length >> 1))));
+        }
+    }
+
+    public static class Serializer extends JsonSerializer<SortedLongSet> {
+        @Override
+        public void serialize(SortedLongSet set, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeArray(set.values, 0, set.size);
+        }
+    }
+}
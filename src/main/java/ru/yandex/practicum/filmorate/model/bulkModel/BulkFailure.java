@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.model.bulkModel;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * Отклоненная запись пакета: ее позиция во входных данных и причина.
+ */
+@Data
+@AllArgsConstructor
+public class BulkFailure {
+    private int index;
+    private String reason;
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.model.bulkModel;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Итог пакетной загрузки: сколько записей получено, сколько применено и какие отклонены.
+ */
+@Data
+public class BulkResult {
+    private final int received;
+    private int applied;
+    private final List<BulkFailure> failures = new ArrayList<>();
+
+    public void addApplied(int count) {
+        applied += count;
+    }
+
+    public void fail(int index, String reason) {
+        failures.add(new BulkFailure(index, reason));
+    }
+
+    public void sortFailures() {
+        failures.sort(Comparator.comparingInt(BulkFailure::getIndex));
+    }
+}
@@ -1,10 +1,13 @@
 package ru.yandex.practicum.filmorate.model.filmModel;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.*;
 import lombok.*;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
@@ -31,7 +34,13 @@ public class Film {
     private Rating rating;
     private Set<Genre> genres = new HashSet<>();
 
-    private Set<Long> idOfUsersWhoLiked = new HashSet<>();
+    private long likesCount;
+
+    /**
+     * Пользователи, лайкнувшие фильм. В проекции без лайкнувших — null и в JSON не выводится.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Set<Long> idOfUsersWhoLiked = new SortedLongSet();
 
     public Film(Long id, String name, String description, LocalDate releaseDate, int duration, Rating rating) {
         this.id = id;
@@ -54,6 +63,13 @@ public class Film {
 
     }
 
+    /**
+     * Сохраняет копию коллекции, так что фильм не делит множество лайкнувших с вызывающим кодом.
+     */
+    public void setIdOfUsersWhoLiked(Collection<Long> idOfUsersWhoLiked) {
+        this.idOfUsersWhoLiked = idOfUsersWhoLiked == null ? null : SortedLongSet.copyOf(idOfUsersWhoLiked);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
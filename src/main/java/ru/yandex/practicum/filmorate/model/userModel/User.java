@@ -3,9 +3,10 @@ package ru.yandex.practicum.filmorate.model.userModel;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.validation.constraints.*;
 import lombok.*;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
 
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.Collection;
 import java.util.Objects;
 import java.util.Set;
 
@@ -25,7 +26,7 @@ public class User {
     @PastOrPresent(message = "Дата рождения не может быть в будущем.")
     @JsonFormat (pattern = "yyyy-MM-dd")
     private LocalDate birthday;
-    private Set<Long> friends = new HashSet<>();
+    private Set<Long> friends = new SortedLongSet();
 
     public User(Long id, String email, String login, String name, LocalDate birthday) {
         this.id = id;
@@ -46,6 +47,13 @@ public class User {
 
     }
 
+    /**
+     * Сохраняет копию коллекции, так что пользователь не делит множество друзей с вызывающим кодом.
+     */
+    public void setFriends(Collection<Long> friends) {
+        this.friends = friends == null ? new SortedLongSet() : SortedLongSet.copyOf(friends);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Запись проверенных элементов пакета порциями, каждая порция пишется в своей транзакции.
+ * Если порция не записалась, ее элементы повторяются по одному, и отклоняются только сбойные.
+ */
+@Slf4j
+final class BulkWrites {
+    static final int CHUNK_SIZE = 1000;
+
+    private BulkWrites() {
+    }
+
+    /**
+     * @param accepted элементы, прошедшие проверку, и их позиции во входных данных
+     */
+    static <T> void write(Map<T, Integer> accepted, Consumer<List<T>> batch, Consumer<T> single, BulkResult result) {
+        List<T> items = new ArrayList<>(accepted.keySet());
+        for (int from = 0; from < items.size(); from += CHUNK_SIZE) {
+            List<T> chunk = new ArrayList<>(items.subList(from, Math.min(from + CHUNK_SIZE, items.size())));
+            try {
+                batch.accept(chunk);
+                result.addApplied(chunk.size());
+            } catch (RuntimeException exception) {
+                log.warn("Порция из {} записей не записана, повтор по одной: {}", chunk.size(), exception.getMessage());
+                for (T item : chunk) {
+                    try {
+                        single.accept(item);
+                        result.addApplied(1);
+                    } catch (RuntimeException itemException) {
+                        result.fail(accepted.get(item), itemException.getMessage());
+                    }
+                }
+            }
+        }
+        result.sortFailures();
+    }
+}
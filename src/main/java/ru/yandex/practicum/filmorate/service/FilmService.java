@@ -1,41 +1,49 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
 import ru.yandex.practicum.filmorate.model.filmModel.Genre;
-import ru.yandex.practicum.filmorate.model.filmModel.Rating;
-import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
-import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.GenreStorage;
-import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.RatingStorage;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.index.Version;
 
 import java.time.LocalDate;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Slf4j
 @Service
+@Timed("filmorate.service")
 public class FilmService {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int STREAM_BATCH_SIZE = 500;
     private static final LocalDate MIN_RELEASE_DATE = LocalDate.of(1895, 12, 28);
     private final FilmStorage filmStorage;
     private final UserService userService;
-    private final GenreStorage genreStorage;
-    private final RatingStorage ratingStorage;
+    private final ReferenceDataRegistry referenceData;
+    private final CatalogVersions versions;
+    private final LikeWriteBehind likeWriteBehind;
 
     @Autowired
-    public FilmService(@Qualifier("filmDbStorage") FilmStorage filmStorage, UserService userService, GenreStorage genreStorage, RatingStorage ratingStorage) {
+    public FilmService(@Qualifier("filmStorage") FilmStorage filmStorage, UserService userService, ReferenceDataRegistry referenceData,
+                       CatalogVersions versions, ObjectProvider<LikeWriteBehind> likeWriteBehind) {
         this.filmStorage = filmStorage;
         this.userService = userService;
-        this.genreStorage = genreStorage;
-        this.ratingStorage = ratingStorage;
+        this.referenceData = referenceData;
+        this.versions = versions;
+        this.likeWriteBehind = likeWriteBehind.getIfAvailable();
     }
 
     public Film createFilm(Film film) {
@@ -44,25 +52,44 @@ public class FilmService {
         checkReleaseDate(film);
         Film savedFilm = filmStorage.createFilm(film);
         log.info("Добавлен фильм {}", film);
-        return getFilmById(savedFilm.getId());
+        return getFilmById(savedFilm.getId(), false);
     }
 
     public Film updateFilm(Film film) {
-        checkValidateFilm(film.getId());
         if (film.getId() == null) {
             throw new ValidateException("Id должен быть указан");
         }
+        checkValidateFilm(film.getId());
         checkValidateGenre(film);
         checkValidateMpa(film);
         checkReleaseDate(film);
         Film updatedFilm = filmStorage.updateFilm(film);
         log.info("был обновлен фильм {}", film);
-        return getFilmById(updatedFilm.getId());
+        return getFilmById(updatedFilm.getId(), false);
     }
 
     public Collection<Film> getAllFilms() {
+        return getAllFilms(true);
+    }
+
+    public Collection<Film> getAllFilms(boolean withLikers) {
         log.info("Был получен запрос на просмотр всех имеющихся фильмов");
-        return filmStorage.getAllFilms();
+        return filmStorage.getAllFilms(withLikers);
+    }
+
+    public Collection<Film> getFilmsPage(long afterId, int limit) {
+        return getFilmsPage(afterId, limit, true);
+    }
+
+    public Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers) {
+        Pages.checkLimit(limit);
+        log.info("Был получен запрос на просмотр {} фильмов после id {}", limit, afterId);
+        return filmStorage.getFilmsPage(afterId, limit, withLikers);
+    }
+
+    public void streamAllFilms(long afterId, boolean withLikers, Consumer<Film> action) {
+        log.info("Был получен запрос на выгрузку всех фильмов после id {}", afterId);
+        filmStorage.forEachFilm(afterId, STREAM_BATCH_SIZE, withLikers, action);
     }
 
     public void deleteFilm(Long filmId) {
@@ -72,46 +99,126 @@ public class FilmService {
     }
 
     public Film getFilmById(Long id) {
-        return filmStorage.findFilmById(id)
+        return getFilmById(id, true);
+    }
+
+    public Film getFilmById(Long id, boolean withLikers) {
+        return filmStorage.findFilmById(id, withLikers)
                 .orElseThrow(() -> new NotFoundException("Фильм с таким id не найден"));
     }
 
+    /**
+     * Версия всего каталога фильмов: меняется при любом изменении фильма или его лайков.
+     */
+    public Version getFilmsVersion() {
+        return versions.films();
+    }
+
+    /**
+     * Версия фильма. Фильмы, не менявшиеся с запуска, делят одну версию, поэтому сначала проверяется, что фильм есть:
+     * иначе запрос к несуществующему id с этим ETag получил бы 304 вместо 404.
+     */
+    public Version getFilmVersion(Long id) {
+        checkValidateFilm(id);
+        return versions.film(id);
+    }
+
     public void addLike(Long filmId, Long userId) {
-        User user = checkValidationUser(userId);
-        Film film = getFilmById(filmId);
-        if (film.getIdOfUsersWhoLiked().contains(userId)) {
+        userService.checkUserExists(userId);
+        checkValidateFilm(filmId);
+        if (likeWriteBehind != null) {
+            likeWriteBehind.addLike(filmId, userId);
+            log.info("Лайк пользователя {} фильму {} принят в очередь", userId, filmId);
+            return;
+        }
+        if (filmStorage.hasLike(filmId, userId)) {
             throw new ValidateException("Пользователь уже ставил лайк этому фильму");
         }
         filmStorage.addLike(filmId, userId);
-        log.info("Пользователь {} лайкнул фильм {}", user.getName(), film.getName());
+        log.info("Пользователь {} лайкнул фильм {}", userId, filmId);
+    }
+
+    /**
+     * Пакетное добавление лайков. Фильмы, пользователи и уже поставленные лайки проверяются
+     * несколькими запросами на весь пакет; некорректные записи отклоняются, не прерывая загрузку остальных.
+     * Без отложенной записи пакет и повтор по одному пишутся прямо в хранилище: к ответу каждая добавленная запись
+     * уже в БД. С отложенной записью пакет ставится в ее очередь, и повтор уже поставленного лайка проверяется
+     * с учетом еще не записанных операций.
+     */
+    public BulkResult addLikes(List<Like> likes) {
+        BulkResult result = new BulkResult(likes.size());
+        List<Like> candidates = likes.stream()
+                .filter(like -> like != null && like.getFilmId() != null && like.getUserId() != null)
+                .toList();
+        Set<Long> films = filmStorage.findExistingIds(candidates.stream().map(Like::getFilmId).collect(Collectors.toSet()));
+        Set<Long> users = userService.findExistingIds(candidates.stream().map(Like::getUserId).collect(Collectors.toSet()));
+        Set<Like> alreadyLiked = likeWriteBehind != null ? Set.of() : filmStorage.findExistingLikes(candidates.stream()
+                .filter(like -> films.contains(like.getFilmId()) && users.contains(like.getUserId()))
+                .toList());
+        Map<Like, Integer> accepted = new LinkedHashMap<>();
+        for (int index = 0; index < likes.size(); index++) {
+            Like like = likes.get(index);
+            if (like == null || like.getFilmId() == null || like.getUserId() == null) {
+                result.fail(index, "Некорректная запись: должны быть указаны filmId и userId");
+            } else if (!films.contains(like.getFilmId())) {
+                result.fail(index, "Фильм с таким id не найден");
+            } else if (!users.contains(like.getUserId())) {
+                result.fail(index, "Пользователь не найден");
+            } else if (alreadyLiked.contains(like) || accepted.putIfAbsent(like, index) != null) {
+                result.fail(index, "Пользователь уже ставил лайк этому фильму");
+            }
+        }
+        if (likeWriteBehind != null) {
+            Map<Like, String> rejected = likeWriteBehind.addLikes(accepted.keySet());
+            accepted.forEach((like, index) -> {
+                if (rejected.containsKey(like)) {
+                    result.fail(index, rejected.get(like));
+                }
+            });
+            result.addApplied(accepted.size() - rejected.size());
+            result.sortFailures();
+        } else {
+            BulkWrites.write(accepted, filmStorage::addLikes,
+                    like -> filmStorage.addLike(like.getFilmId(), like.getUserId()), result);
+        }
+        log.info("Пакетная загрузка лайков: получено {}, добавлено {}, отклонено {}",
+                result.getReceived(), result.getApplied(), result.getFailures().size());
+        return result;
     }
 
     public void deleteLike(Long filmId, Long userId) {
-        User user = checkValidationUser(userId);
-        Film film = getFilmById(filmId);
-        if (!film.getIdOfUsersWhoLiked().contains(userId)) {
+        userService.checkUserExists(userId);
+        checkValidateFilm(filmId);
+        if (likeWriteBehind != null) {
+            likeWriteBehind.deleteLike(filmId, userId);
+            log.info("Снятие лайка пользователя {} с фильма {} принято в очередь", userId, filmId);
+            return;
+        }
+        if (!filmStorage.hasLike(filmId, userId)) {
             throw new ValidateException("Пользователь не ставил лайк этому фильму");
         }
         filmStorage.deleteLike(filmId, userId);
-        log.info("Пользователь {} убрал лайк с фильма {}", user.getName(), film.getName());
+        log.info("Пользователь {} убрал лайк с фильма {}", userId, filmId);
     }
 
     public Collection<Film> showMostLikedFilms(int count) {
+        return showMostLikedFilms(count, true);
+    }
+
+    public Collection<Film> showMostLikedFilms(int count, boolean withLikers) {
         log.info("Был запрос на получение {} самых популярных фильмов", count);
-        return filmStorage.showMostLikedFilms(count);
+        return filmStorage.showMostLikedFilms(count, withLikers);
     }
 
-    private long getNextId() {
-        long currentMaxId = filmStorage.getAllFilms()
-                .stream()
-                .mapToLong(Film::getId)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    public Collection<Film> getRecommendations(Long userId, int count) {
+        Pages.checkCount(count);
+        userService.checkUserExists(userId);
+        log.info("Был запрос на получение {} рекомендаций для пользователя {}", count, userId);
+        return filmStorage.findFilmsByIds(filmStorage.findRecommendedFilmIds(userId, count), false);
     }
 
     private void checkValidateFilm(Long filmId) {
-        if (filmStorage.findFilmById(filmId).isEmpty()) {
+        if (!filmStorage.existsById(filmId)) {
             throw new NotFoundException("Фильм с таким id не найден");
         }
     }
@@ -123,24 +230,16 @@ public class FilmService {
         }
     }
 
-    private User checkValidationUser(Long userId) {
-        return userService.checkValidationUser(userId);
-    }
-
     private void checkValidateGenre(Film film) {
-        Set<Integer> genresId;
-        genresId = genreStorage.getAllGenres().stream().map(Genre::getId).collect(Collectors.toSet());
         for (Genre genre : film.getGenres()) {
-            if (!genresId.contains(genre.getId())) {
+            if (referenceData.findGenre(genre.getId()).isEmpty()) {
                 throw new NotFoundException("Такого жанра нет");
             }
         }
     }
 
     private void checkValidateMpa(Film film) {
-        Set<Integer> ratingsId = new HashSet<>();
-        ratingsId = ratingStorage.getAllRatings().stream().map(Rating::getId).collect(Collectors.toSet());
-        if (!ratingsId.contains(film.getRating().getId())) {
+        if (referenceData.findRating(film.getRating().getId()).isEmpty()) {
             throw new NotFoundException("Такого рейтинга нет");
         }
     }
@@ -1,30 +1,37 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.filmModel.Genre;
-import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.index.Version;
 
 import java.util.Collection;
 
 @Slf4j
 @Service
+@Timed("filmorate.service")
 public class GenreService {
-    private final GenreStorage genreStorage;
+    private final ReferenceDataRegistry referenceData;
 
     @Autowired
-    public GenreService(GenreStorage genreStorage) {
-        this.genreStorage = genreStorage;
+    public GenreService(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
     }
 
     public Genre getGenreById(int id) {
-        return genreStorage.getGenreById(id)
+        return referenceData.findGenre(id)
                 .orElseThrow(() -> new NotFoundException("Такой жанр не найден"));
     }
 
     public Collection<Genre> getAllGenres() {
-        return genreStorage.getAllGenres();
+        return referenceData.getAllGenres();
+    }
+
+    public Version getVersion() {
+        return referenceData.version();
     }
 }
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Журнал еще не записанных в БД лайков: строка «+ filmId userId» или «- filmId userId» на каждую операцию.
+ * Запись подтверждается только после fsync (force) файла, поэтому переживает не только падение процесса,
+ * но и сбой ОС или питания. fsync групповой: append только дописывает строку, а sync дожидается, пока
+ * она окажется на диске, и одним force покрывает все строки, дописанные к этому моменту другими запросами.
+ * Записанные в БД операции из журнала не удаляются, пока не накопятся; тогда журнал переписывается остатком очереди.
+ */
+@Slf4j
+final class LikeJournal implements AutoCloseable {
+
+    private final Path path;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private FileChannel channel;
+    private volatile long appended;
+    private volatile long synced;
+    private long lines;
+
+    LikeJournal(Path path) {
+        this.path = path.toAbsolutePath();
+        try {
+            Files.createDirectories(this.path.getParent());
+            channel = open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void replay(BiConsumer<Like, Boolean> action) {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] parts = line.split(" ");
+                if (parts.length != 3 || !(parts[0].equals("+") || parts[0].equals("-"))) {
+                    log.warn("Пропущена поврежденная строка журнала лайков: {}", line);
+                    continue;
+                }
+                try {
+                    action.accept(new Like(Long.parseLong(parts[1]), Long.parseLong(parts[2])), parts[0].equals("+"));
+                } catch (NumberFormatException e) {
+                    log.warn("Пропущена поврежденная строка журнала лайков: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Дописывает операцию и возвращает ее номер для sync. Вызовы append и rewrite не должны пересекаться.
+     */
+    long append(Like like, boolean add) throws IOException {
+        channel.write(StandardCharsets.UTF_8.encode(line(like, add)));
+        lines++;
+        return ++appended;
+    }
+
+    /**
+     * Число строк в журнале, включая операции, уже записанные в БД.
+     */
+    long lines() {
+        return lines;
+    }
+
+    /**
+     * Возвращает управление, когда операция с номером position и все предыдущие уже на диске.
+     */
+    void sync(long position) throws IOException {
+        if (synced >= position) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (synced >= position) {
+                return;
+            }
+            long target = appended;
+            channel.force(false);
+            synced = target;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Атомарно заменяет журнал списком операций, которые еще не записаны в БД.
+     */
+    void rewrite(Map<Like, Boolean> pending) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        syncLock.lock();
+        try {
+            channel.close();
+            try (FileChannel rewritten = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                StringBuilder content = new StringBuilder();
+                pending.forEach((like, add) -> content.append(line(like, add)));
+                rewritten.write(StandardCharsets.UTF_8.encode(content.toString()));
+                rewritten.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synced = appended;
+            lines = pending.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            try {
+                channel = open();
+            } catch (IOException e) {
+                log.error("Не удалось открыть журнал лайков {}", path, e);
+            }
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static String line(Like like, boolean add) {
+        return (add ? "+ " : "- ") + like.getFilmId() + " " + like.getUserId() + "\n";
+    }
+}
@@ -0,0 +1,364 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.InternalServerException;
+import ru.yandex.practicum.filmorate.exceptions.ServiceUnavailableException;
+import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.storage.dbStorage.DatabaseCheckpoint;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Отложенная запись лайков. Лайк подтверждается после проверки по матрице лайков в памяти и fsync журнала,
+ * а в БД попадает пакетом по расписанию. Лайк и последующее снятие того же лайка до записи взаимно сокращаются.
+ * Когда очередь заполнена, запрос ждет освобождения места до offer-timeout, затем получает 503.
+ * Записанные операции остаются в журнале, пока их в нем не станет compact-threshold: тогда БД сбрасывает
+ * зафиксированное на диск (CHECKPOINT SYNC), и только после этого журнал переписывается остатком очереди.
+ * Включается свойством filmorate.likes.write-behind.enabled=true и только для хранилища в БД.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("${filmorate.likes.write-behind.enabled:false} and '${filmorate.storage:db}' == 'db'")
+public class LikeWriteBehind {
+
+    private final FilmStorage filmStorage;
+    private final LikeMatrix likeMatrix;
+    private final LikeJournal journal;
+    private final DatabaseCheckpoint checkpoint;
+    private final int maxPending;
+    private final long compactThreshold;
+    private final int batchSize;
+    private final Duration offerTimeout;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Map<Like, Boolean> pending = new LinkedHashMap<>();
+    private final Map<Like, Boolean> inFlight = new HashMap<>();
+    private final Timer flushTimer;
+    private final Counter rejected;
+    private final Counter dropped;
+
+    public LikeWriteBehind(@Qualifier("cachingFilmStorage") FilmStorage filmStorage, LikeMatrix likeMatrix,
+                           DatabaseCheckpoint checkpoint,
+                           @Value("${filmorate.likes.write-behind.journal:data/likes.journal}") Path journalPath,
+                           @Value("${filmorate.likes.write-behind.max-pending:100000}") int maxPending,
+                           @Value("${filmorate.likes.write-behind.compact-threshold:100000}") long compactThreshold,
+                           @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                           @Value("${filmorate.likes.write-behind.offer-timeout:PT1S}") Duration offerTimeout,
+                           ObjectProvider<MeterRegistry> meterRegistry) {
+        this.filmStorage = filmStorage;
+        this.likeMatrix = likeMatrix;
+        this.journal = new LikeJournal(journalPath);
+        this.checkpoint = checkpoint;
+        this.maxPending = maxPending;
+        this.compactThreshold = compactThreshold;
+        this.batchSize = batchSize;
+        this.offerTimeout = offerTimeout;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            Gauge.builder("filmorate.likes.write_behind.pending", this, LikeWriteBehind::pendingCount)
+                    .description("Лайки, ожидающие записи в БД")
+                    .register(registry);
+            flushTimer = Timer.builder("filmorate.likes.write_behind.flush")
+                    .description("Время записи пакета лайков в БД")
+                    .register(registry);
+            rejected = registry.counter("filmorate.likes.write_behind.rejected");
+            dropped = registry.counter("filmorate.likes.write_behind.dropped");
+        } else {
+            flushTimer = null;
+            rejected = null;
+            dropped = null;
+        }
+    }
+
+    /**
+     * Восстанавливает очередь из журнала после перезапуска. Итог операций по каждому лайку сверяется с БД
+     * одним пакетным запросом, а не с матрицей лайков, чтобы не строить ее при создании бина;
+     * операции, которые уже есть в БД, пропускаются.
+     */
+    @PostConstruct
+    public void recover() {
+        lock.lock();
+        try {
+            Map<Like, Boolean> replayed = new LinkedHashMap<>();
+            journal.replay((like, add) -> {
+                replayed.remove(like);
+                replayed.put(like, add);
+            });
+            Set<Like> existing = replayed.isEmpty() ? Set.of() : filmStorage.findExistingLikes(replayed.keySet());
+            replayed.forEach((like, add) -> {
+                if (existing.contains(like) != add) {
+                    pending.put(like, add);
+                }
+            });
+            journal.rewrite(pending);
+            if (!pending.isEmpty()) {
+                log.info("Из журнала восстановлено {} незаписанных операций с лайками", pending.size());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addLike(long filmId, long userId) {
+        submit(new Like(filmId, userId), true);
+    }
+
+    public void deleteLike(long filmId, long userId) {
+        submit(new Like(filmId, userId), false);
+    }
+
+    /**
+     * Ставит в очередь пакет лайков с одним fsync журнала. Каждый лайк проверяется по тому же состоянию,
+     * что и одиночный (очередь, затем матрица лайков), так что ожидающее снятие или постановка того же лайка
+     * учитываются. Возвращает отклоненные лайки с причиной; после первого отказа из-за переполнения
+     * очереди остальные лайки пакета отклоняются без ожидания.
+     */
+    public Map<Like, String> addLikes(Collection<Like> likes) {
+        Map<Like, String> failures = new HashMap<>();
+        long position = 0;
+        lock.lock();
+        try {
+            String overflow = null;
+            for (Like like : likes) {
+                if (effectiveState(like)) {
+                    failures.put(like, "Пользователь уже ставил лайк этому фильму");
+                    continue;
+                }
+                if (overflow == null) {
+                    try {
+                        awaitCapacity(like);
+                    } catch (ServiceUnavailableException e) {
+                        overflow = e.getMessage();
+                    }
+                }
+                if (overflow != null) {
+                    failures.put(like, overflow);
+                    continue;
+                }
+                try {
+                    position = journal.append(like, true);
+                } catch (IOException e) {
+                    throw new InternalServerException("Не удалось записать лайк в журнал");
+                }
+                enqueue(like, true);
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new InternalServerException("Не удалось записать лайк в журнал");
+        }
+        return failures;
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes.write-behind.flush-interval:PT1S}")
+    public void flush() {
+        flushLock.lock();
+        try {
+            int flushed;
+            do {
+                flushed = flushBatch();
+            } while (flushed == batchSize);
+            compactJournal();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        journal.close();
+    }
+
+    /**
+     * Операция дописывается в журнал под общей блокировкой, а fsync выполняется уже после нее:
+     * одновременные запросы ждут один и тот же force и не держат очередь на время записи на диск.
+     */
+    private void submit(Like like, boolean add) {
+        long position;
+        lock.lock();
+        try {
+            if (effectiveState(like) == add) {
+                throw new ValidateException(add ? "Пользователь уже ставил лайк этому фильму"
+                        : "Пользователь не ставил лайк этому фильму");
+            }
+            awaitCapacity(like);
+            try {
+                position = journal.append(like, add);
+            } catch (IOException e) {
+                throw new InternalServerException("Не удалось записать лайк в журнал");
+            }
+            enqueue(like, add);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new InternalServerException("Не удалось записать лайк в журнал");
+        }
+    }
+
+    private void awaitCapacity(Like like) {
+        long remaining = offerTimeout.toNanos();
+        while (pending.size() >= maxPending && !pending.containsKey(like)) {
+            if (remaining <= 0) {
+                if (rejected != null) {
+                    rejected.increment();
+                }
+                throw new ServiceUnavailableException("Очередь лайков переполнена, повторите запрос позже");
+            }
+            try {
+                remaining = notFull.awaitNanos(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServiceUnavailableException("Ожидание места в очереди лайков прервано");
+            }
+        }
+    }
+
+    /**
+     * Состояние лайка с учетом очереди: сначала незаписанные операции, потом записываемый пакет, потом матрица лайков.
+     */
+    private boolean effectiveState(Like like) {
+        Boolean queued = pending.get(like);
+        if (queued == null) {
+            queued = inFlight.get(like);
+        }
+        return queued != null ? queued : likeMatrix.hasLike(like.getFilmId(), like.getUserId());
+    }
+
+    /**
+     * Операция в очереди всегда противоположна предыдущей для того же лайка, поэтому встречная операция ее отменяет.
+     */
+    private void enqueue(Like like, boolean add) {
+        if (pending.remove(like) == null) {
+            pending.put(like, add);
+        }
+    }
+
+    private int flushBatch() {
+        List<Like> added = new ArrayList<>();
+        List<Like> removed = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<Like, Boolean>> iterator = pending.entrySet().iterator();
+            while (iterator.hasNext() && inFlight.size() < batchSize) {
+                Map.Entry<Like, Boolean> entry = iterator.next();
+                inFlight.put(entry.getKey(), entry.getValue());
+                (entry.getValue() ? added : removed).add(entry.getKey());
+                iterator.remove();
+            }
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (added.isEmpty() && removed.isEmpty()) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        List<Like> retry = new ArrayList<>();
+        write(added, filmStorage::addLikes, like -> filmStorage.addLike(like.getFilmId(), like.getUserId()), retry);
+        write(removed, filmStorage::deleteLikes, like -> filmStorage.deleteLike(like.getFilmId(), like.getUserId()), retry);
+        if (flushTimer != null) {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        lock.lock();
+        try {
+            for (Like like : retry) {
+                enqueue(like, inFlight.get(like));
+            }
+            inFlight.clear();
+        } finally {
+            lock.unlock();
+        }
+        log.debug("Записано в БД лайков: {}, снятий: {}, отложено: {}", added.size(), removed.size(), retry.size());
+        return added.size() + removed.size();
+    }
+
+    /**
+     * Убирает из журнала записанные операции, когда их набралось compact-threshold. Вызывается под flushLock,
+     * так что записываемых пакетов нет, а все, что уже записано, после CHECKPOINT SYNC лежит в БД на диске.
+     * Журнал переписывается под общей блокировкой, но не чаще, чем раз в compact-threshold операций.
+     */
+    private void compactJournal() {
+        lock.lock();
+        try {
+            if (journal.lines() - pending.size() < compactThreshold) {
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        checkpoint.sync();
+        lock.lock();
+        try {
+            journal.rewrite(pending);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Пишет пакет целиком, а при ошибке — по одному. Операции, нарушающие целостность (например, фильм уже удален),
+     * отбрасываются; при прочих ошибках операция возвращается в очередь.
+     */
+    private void write(List<Like> likes, Consumer<List<Like>> batch, Consumer<Like> single, List<Like> retry) {
+        if (likes.isEmpty()) {
+            return;
+        }
+        try {
+            batch.accept(likes);
+        } catch (RuntimeException batchException) {
+            log.warn("Пакет из {} лайков не записан, повтор по одному: {}", likes.size(), batchException.getMessage());
+            for (Like like : likes) {
+                try {
+                    single.accept(like);
+                } catch (DataIntegrityViolationException | InternalServerException e) {
+                    log.error("Операция с лайком {} отброшена: {}", like, e.getMessage());
+                    if (dropped != null) {
+                        dropped.increment();
+                    }
+                } catch (RuntimeException e) {
+                    retry.add(like);
+                }
+            }
+        }
+    }
+}
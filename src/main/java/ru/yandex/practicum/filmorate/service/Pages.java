@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+
+/**
+ * Проверка размера страницы, общая для постраничной выдачи фильмов и пользователей,
+ * а также числа записей в рекомендациях и возможных друзьях.
+ */
+@Slf4j
+final class Pages {
+    static final int MAX_PAGE_SIZE = 1000;
+
+    private Pages() {
+    }
+
+    static void checkLimit(int limit) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.error("Ошибка валидации: размер страницы {} вне диапазона от 1 до {}", limit, MAX_PAGE_SIZE);
+            throw new ValidateException("Размер страницы должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+
+    static void checkCount(int count) {
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            log.error("Ошибка валидации: count {} вне диапазона от 1 до {}", count, MAX_PAGE_SIZE);
+            throw new ValidateException("Параметр count должен быть от 1 до " + MAX_PAGE_SIZE);
+        }
+    }
+}
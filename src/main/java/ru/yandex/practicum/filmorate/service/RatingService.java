@@ -1,31 +1,38 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.filmModel.Rating;
-import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.RatingStorage;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.index.Version;
 
 import java.util.Collection;
 
 @Slf4j
 @Service
+@Timed("filmorate.service")
 public class RatingService {
 
-    private final RatingStorage ratingStorage;
+    private final ReferenceDataRegistry referenceData;
 
     @Autowired
-    public RatingService(RatingStorage ratingStorage) {
-        this.ratingStorage = ratingStorage;
+    public RatingService(ReferenceDataRegistry referenceData) {
+        this.referenceData = referenceData;
     }
 
     public Rating getRatingById(int id) {
-        return ratingStorage.getRatingById(id)
+        return referenceData.findRating(id)
                 .orElseThrow(() -> new NotFoundException("Такой тип рейтинга не найден"));
     }
 
     public Collection<Rating> getAllRatings() {
-        return ratingStorage.getAllRatings();
+        return referenceData.getAllRatings();
+    }
+
+    public Version getVersion() {
+        return referenceData.version();
     }
 }
@@ -1,23 +1,34 @@
 package ru.yandex.practicum.filmorate.service;
 
+import io.micrometer.core.annotation.Timed;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
 import ru.yandex.practicum.filmorate.model.userModel.User;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
+@Timed("filmorate.service")
 public class UserService {
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int STREAM_BATCH_SIZE = 500;
+    private static final int MAX_COMMON_USERS = 100;
+
     private final UserStorage userStorage;
 
     @Autowired
-    public UserService(@Qualifier("userDbStorage") UserStorage userStorage) {
+    public UserService(@Qualifier("userStorage") UserStorage userStorage) {
         this.userStorage = userStorage;
     }
 
@@ -33,7 +44,7 @@ public class UserService {
             log.error("Ошибка валидации: id не может быть null");
             throw new ValidateException("Id должен быть указан");
         }
-        if (userStorage.getAllUsers().stream().mapToLong(User::getId).noneMatch(id -> id == user.getId())) {
+        if (!userStorage.existsById(user.getId())) {
             log.error("Ошибка валидации: такого id '{}' не существует", user.getId());
             throw new NotFoundException("Пользователь с таким id не найден");
         }
@@ -47,65 +58,126 @@ public class UserService {
         return userStorage.getAllUsers();
     }
 
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        Pages.checkLimit(limit);
+        log.info("Был получен запрос на просмотр {} пользователей после id {}", limit, afterId);
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
+    public void streamAllUsers(long afterId, Consumer<User> action) {
+        log.info("Был получен запрос на выгрузку всех пользователей после id {}", afterId);
+        userStorage.forEachUser(afterId, STREAM_BATCH_SIZE, action);
+    }
+
     public User findUserById(Long id) {
-        if (userStorage.findUserById(id).isPresent()) {
-            return userStorage.findUserById(id).get();
-        } else {
-            throw new NotFoundException("Пользователя с таким id не существует");
-        }
+        return userStorage.findUserById(id)
+                .orElseThrow(() -> new NotFoundException("Пользователя с таким id не существует"));
     }
 
     public void addFriend(Long userId, Long friendId) {
         if (userId.equals(friendId)) {
             throw new ValidateException("Невозможно добавить в друзья самого себя");
         }
-        User user = checkValidationUser(userId);
-        User friend = checkValidationUser(friendId);
+        checkUserExists(userId);
+        checkUserExists(friendId);
         userStorage.addFriend(userId, friendId);
-        if (userStorage.showFriends(userId).contains(friend)) {
-            log.info("Пользователи {} и {} теперь друзья", user.getLogin(), friend.getLogin());
-        } else {
-            log.info("Пользователь {} отправил запрос дружбы пользователю {}", user.getLogin(), friend.getLogin());
-        }
+        log.info("Пользователь {} добавил в друзья пользователя {}", userId, friendId);
+    }
 
+    /**
+     * Пакетное добавление в друзья. Существование пользователей проверяется одним запросом на пакет;
+     * некорректные записи отклоняются, не прерывая загрузку остальных.
+     */
+    public BulkResult addFriends(List<Friendship> friendships) {
+        BulkResult result = new BulkResult(friendships.size());
+        Set<Long> users = findExistingIds(friendships.stream()
+                .filter(friendship -> friendship != null && friendship.getUserId() != null && friendship.getFriendId() != null)
+                .flatMap(friendship -> Stream.of(friendship.getUserId(), friendship.getFriendId()))
+                .collect(Collectors.toSet()));
+        Map<Friendship, Integer> accepted = new LinkedHashMap<>();
+        for (int index = 0; index < friendships.size(); index++) {
+            Friendship friendship = friendships.get(index);
+            if (friendship == null || friendship.getUserId() == null || friendship.getFriendId() == null) {
+                result.fail(index, "Некорректная запись: должны быть указаны userId и friendId");
+            } else if (friendship.getUserId().equals(friendship.getFriendId())) {
+                result.fail(index, "Невозможно добавить в друзья самого себя");
+            } else if (!users.contains(friendship.getUserId()) || !users.contains(friendship.getFriendId())) {
+                result.fail(index, "Пользователь не найден");
+            } else if (accepted.putIfAbsent(friendship, index) != null) {
+                result.fail(index, "Запись повторяется в пакете");
+            }
+        }
+        BulkWrites.write(accepted, userStorage::addFriends,
+                friendship -> addFriend(friendship.getUserId(), friendship.getFriendId()), result);
+        log.info("Пакетная загрузка друзей: получено {}, добавлено {}, отклонено {}",
+                result.getReceived(), result.getApplied(), result.getFailures().size());
+        return result;
     }
 
     public void deleteFriend(Long userId, Long friendId) {
         if (userId.equals(friendId)) {
             throw new ValidateException("Невозможно удалить из друзей самого себя");
         }
-        User user = checkValidationUser(userId);
-        User friend = checkValidationUser(friendId);
+        checkUserExists(userId);
+        checkUserExists(friendId);
         userStorage.deleteFriend(userId, friendId);
-        log.info("Пользователи {} и {} теперь не друзья :(((((((((((((((((", user.getName(), friend.getName());
+        log.info("Пользователи {} и {} теперь не друзья :(((((((((((((((((", userId, friendId);
     }
 
     public Collection<User> showFriends(Long userId) {
-        checkValidationUser(userId);
-        return userStorage.showFriends(userId);
+        return showFriends(userId, false);
+    }
+
+    public Collection<User> showFriends(Long userId, boolean withFriends) {
+        checkUserExists(userId);
+        return userStorage.showFriends(userId, withFriends);
     }
 
     public Collection<User> showCommonFriends(Long userId, Long friendId) {
+        return showCommonFriends(userId, friendId, false);
+    }
+
+    public Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends) {
         if (userId.equals(friendId)) {
             throw new ValidateException("Невозможно добавить в друзья самого себя");
         }
-        checkValidationUser(userId);
-        checkValidationUser(friendId);
-        return userStorage.showCommonFriends(userId, friendId);
+        checkUserExists(userId);
+        checkUserExists(friendId);
+        return userStorage.showCommonFriends(userId, friendId, withFriends);
+    }
+
+    /**
+     * Общие друзья нескольких пользователей. Существование пользователей проверяется одним запросом.
+     */
+    public Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        List<Long> distinct = userIds.stream().distinct().toList();
+        if (distinct.size() < 2 || distinct.size() > MAX_COMMON_USERS) {
+            throw new ValidateException("Нужно указать от 2 до " + MAX_COMMON_USERS + " разных пользователей");
+        }
+        if (userStorage.findExistingIds(distinct).size() != distinct.size()) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        return userStorage.showCommonFriends(distinct, withFriends);
     }
 
-    protected User checkValidationUser(Long userId) {
-        return userStorage.findUserById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь не найден"));
+    /**
+     * Возможные друзья: друзья друзей пользователя по убыванию числа общих друзей.
+     */
+    public Collection<User> getFriendSuggestions(Long userId, int count) {
+        Pages.checkCount(count);
+        checkUserExists(userId);
+        log.info("Был запрос на получение {} возможных друзей для пользователя {}", count, userId);
+        return userStorage.findUsersByIds(userStorage.findSuggestedFriendIds(userId, count), false);
     }
 
-    private long getNextId() {
-        long currentMaxId = userStorage.getAllUsers()
-                .stream()
-                .mapToLong(User::getId)
-                .max()
-                .orElse(0);
-        return ++currentMaxId;
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return userStorage.findExistingIds(ids);
+    }
+
+    protected void checkUserExists(Long userId) {
+        if (!userStorage.existsById(userId)) {
+            throw new NotFoundException("Пользователь не найден");
+        }
     }
 
     private String checkName(String name, String login) {
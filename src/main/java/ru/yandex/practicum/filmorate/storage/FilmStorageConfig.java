@@ -0,0 +1,46 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.inMemoryStorage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.shardedStorage.ShardedFilmStorage;
+
+/**
+ * Хранилище фильмов для сервисов: filmorate.storage=db (по умолчанию) — БД с кэшем,
+ * filmorate.storage=memory — в памяти, filmorate.storage=sharded — фильмы в БД, лайки в шардах по пользователям.
+ * Справочники жанров и рейтингов во всех случаях читаются из БД.
+ */
+@Configuration
+public class FilmStorageConfig {
+
+    @Bean("filmStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+    public FilmStorage dbFilmStorage(@Qualifier("cachingFilmStorage") FilmStorage filmStorage) {
+        return filmStorage;
+    }
+
+    @Bean("filmStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
+    public FilmStorage inMemoryFilmStorage(ReferenceDataRegistry referenceData, CatalogVersions versions) {
+        return new InMemoryFilmStorage(referenceData, versions);
+    }
+
+    @Bean("filmStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "sharded")
+    public FilmStorage shardedFilmStorage(JdbcTemplate jdbc, @Qualifier("filmDbStorage") FilmStorage filmStorage,
+                                          UserShards shards, FilmLeaderboard leaderboard, LikeMatrix likeMatrix,
+                                          CatalogVersions versions, QueryMetrics metrics, ReplicaRouting routing) {
+        return new ShardedFilmStorage(jdbc, filmStorage, shards, leaderboard, likeMatrix, versions, metrics, routing);
+    }
+}
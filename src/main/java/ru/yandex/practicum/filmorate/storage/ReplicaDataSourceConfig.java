@@ -0,0 +1,57 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRoutingDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Основная БД и реплика для чтения: filmorate.datasource.replica.enabled=true. Основная БД настраивается
+ * как обычно через spring.datasource.*, реплика — через filmorate.datasource.replica.url, username и password,
+ * размер пула и таймаут у нее те же. Flyway и индексы в памяти работают с основной БД;
+ * схема реплики должна приходить с основной репликацией.
+ */
+@Configuration
+@ConditionalOnProperty(name = "filmorate.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public HikariDataSource replicaDataSource(@Qualifier("primaryDataSource") HikariDataSource primary,
+                                              @Value("${filmorate.datasource.replica.url}") String url,
+                                              @Value("${filmorate.datasource.replica.username:${spring.datasource.username:sa}}") String username,
+                                              @Value("${filmorate.datasource.replica.password:${spring.datasource.password:}}") String password) {
+        HikariDataSource replica = new HikariDataSource();
+        replica.setJdbcUrl(url);
+        replica.setUsername(username);
+        replica.setPassword(password);
+        replica.setReadOnly(true);
+        replica.setPoolName((primary.getPoolName() != null ? primary.getPoolName() : "filmorate") + "-replica");
+        replica.setMaximumPoolSize(primary.getMaximumPoolSize());
+        if (primary.getMinimumIdle() >= 0) {
+            replica.setMinimumIdle(primary.getMinimumIdle());
+        }
+        replica.setConnectionTimeout(primary.getConnectionTimeout());
+        return replica;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                 @Qualifier("replicaDataSource") DataSource replica) {
+        return new ReplicaRoutingDataSource(primary, replica);
+    }
+}
@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+
+import java.util.List;
+
+/**
+ * Шарды лайков и дружбы: при filmorate.storage=sharded — базы из filmorate.shards.urls,
+ * иначе единственный шард — основная БД. Индексы в памяти и сверка счетчиков лайков читают связи через них.
+ */
+@Configuration
+public class UserShardsConfig {
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "sharded")
+    public UserShards shardedUserShards(@Value("${filmorate.shards.urls}") List<String> urls,
+                                        @Value("${filmorate.shards.username:sa}") String username,
+                                        @Value("${filmorate.shards.password:}") String password,
+                                        @Value("${filmorate.shards.pool-size:4}") int poolSize) {
+        return UserShards.connect(urls, username, password, poolSize);
+    }
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnExpression("'${filmorate.storage:db}' != 'sharded'")
+    public UserShards singleUserShard(JdbcTemplate jdbc) {
+        return UserShards.single(jdbc);
+    }
+}
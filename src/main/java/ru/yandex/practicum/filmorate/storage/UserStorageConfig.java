@@ -0,0 +1,41 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.inMemoryStorage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.shardedStorage.ShardedUserStorage;
+
+/**
+ * Хранилище пользователей для сервисов: filmorate.storage=db (по умолчанию) — БД с кэшем,
+ * filmorate.storage=memory — в памяти, filmorate.storage=sharded — пользователи в БД, дружба в шардах по пользователям.
+ */
+@Configuration
+public class UserStorageConfig {
+
+    @Bean("userStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "db", matchIfMissing = true)
+    public UserStorage dbUserStorage(@Qualifier("cachingUserStorage") UserStorage userStorage) {
+        return userStorage;
+    }
+
+    @Bean("userStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "memory")
+    public UserStorage inMemoryUserStorage() {
+        return new InMemoryUserStorage();
+    }
+
+    @Bean("userStorage")
+    @ConditionalOnProperty(name = "filmorate.storage", havingValue = "sharded")
+    public UserStorage shardedUserStorage(UserDbStorage userStorage, UserShards shards, FriendGraph friendGraph,
+                                          QueryMetrics metrics, ReplicaRouting routing) {
+        return new ShardedUserStorage(userStorage, shards, friendGraph, metrics, routing);
+    }
+}
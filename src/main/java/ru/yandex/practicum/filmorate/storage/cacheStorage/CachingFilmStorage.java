@@ -0,0 +1,174 @@
+package ru.yandex.practicum.filmorate.storage.cacheStorage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.TransactionHooks;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Кэш фильмов по id поверх filmDbStorage.
+ * Кэшируются только проекции без лайкнувших (с likesCount), фильмы со списком лайкнувших читаются из БД.
+ * Запись сбрасывается при изменении, удалении фильма и при изменении его лайков.
+ * Популярные фильмы берутся из кэша, из БД догружаются только отсутствующие.
+ * Фильмы изменяемые, поэтому из кэша отдаются их копии.
+ */
+@Repository("cachingFilmStorage")
+public class CachingFilmStorage implements FilmStorage {
+
+    private final FilmStorage filmStorage;
+    private final GuardedCache<Film> films;
+
+    public CachingFilmStorage(@Qualifier("filmDbStorage") FilmStorage filmStorage,
+                              @Value("${filmorate.cache.films.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.films.expire-after-write:PT10M}") Duration expireAfterWrite,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this.filmStorage = filmStorage;
+        Cache<Long, Film> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.films = new GuardedCache<>(cache, CachingFilmStorage::copy);
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "films"));
+    }
+
+    @Override
+    public Collection<Film> getAllFilms(boolean withLikers) {
+        return filmStorage.getAllFilms(withLikers);
+    }
+
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers) {
+        return filmStorage.getFilmsPage(afterId, limit, withLikers);
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        return filmStorage.createFilm(film);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        Film updated = filmStorage.updateFilm(film);
+        evict(film.getId());
+        return updated;
+    }
+
+    @Override
+    public void deleteFilm(Long filmId) {
+        filmStorage.deleteFilm(filmId);
+        evict(filmId);
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long id, boolean withLikers) {
+        if (withLikers) {
+            return filmStorage.findFilmById(id, true);
+        }
+        return films.get(id, key -> filmStorage.findFilmById(key, false));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return films.contains(id) || filmStorage.existsById(id);
+    }
+
+    @Override
+    public boolean hasLike(Long filmId, Long userId) {
+        return filmStorage.hasLike(filmId, userId);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return filmStorage.findExistingIds(ids);
+    }
+
+    @Override
+    public Set<Like> findExistingLikes(Collection<Like> likes) {
+        return filmStorage.findExistingLikes(likes);
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids, boolean withLikers) {
+        if (withLikers) {
+            return filmStorage.findFilmsByIds(ids, true);
+        }
+        Map<Long, Film> found = films.getAll(ids, missing -> filmStorage.findFilmsByIds(missing, false)
+                .stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity())));
+        return ids.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Override
+    public void addLike(Long filmId, Long userId) {
+        filmStorage.addLike(filmId, userId);
+        evict(filmId);
+    }
+
+    @Override
+    public void addLikes(Collection<Like> likes) {
+        filmStorage.addLikes(likes);
+        likes.stream().map(Like::getFilmId).distinct().forEach(this::evict);
+    }
+
+    @Override
+    public void deleteLike(Long filmId, Long userId) {
+        filmStorage.deleteLike(filmId, userId);
+        evict(filmId);
+    }
+
+    @Override
+    public void deleteLikes(Collection<Like> likes) {
+        filmStorage.deleteLikes(likes);
+        likes.stream().map(Like::getFilmId).distinct().forEach(this::evict);
+    }
+
+    @Override
+    public List<Long> findMostLikedFilmIds(int count) {
+        return filmStorage.findMostLikedFilmIds(count);
+    }
+
+    @Override
+    public List<Long> findRecommendedFilmIds(Long userId, int count) {
+        return filmStorage.findRecommendedFilmIds(userId, count);
+    }
+
+    /**
+     * Запись сбрасывается сразу и еще раз после завершения транзакции: до фиксации параллельное чтение
+     * на другом соединении может снова положить в кэш прежнюю строку.
+     */
+    private void evict(Long filmId) {
+        films.invalidate(filmId);
+        TransactionHooks.afterCompletion(() -> films.invalidate(filmId));
+    }
+
+    private static Film copy(Film cached) {
+        Rating rating = cached.getRating();
+        Film film = new Film(cached.getId(), cached.getName(), cached.getDescription(), cached.getReleaseDate(),
+                cached.getDuration(), rating == null ? null : new Rating(rating.getId(), rating.getName()));
+        film.setGenres(cached.getGenres().stream()
+                .map(genre -> new Genre(genre.getId(), genre.getName()))
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
+        film.setLikesCount(cached.getLikesCount());
+        film.setIdOfUsersWhoLiked(cached.getIdOfUsersWhoLiked());
+        return film;
+    }
+}
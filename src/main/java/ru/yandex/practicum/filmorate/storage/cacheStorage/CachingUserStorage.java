@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.storage.cacheStorage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.TransactionHooks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Кэш пользователей по id поверх userDbStorage.
+ * Запись сбрасывается при любом изменении пользователя или его списка друзей.
+ * Пользователи изменяемые, поэтому из кэша отдаются их копии.
+ */
+@Repository("cachingUserStorage")
+public class CachingUserStorage implements UserStorage {
+
+    private final UserStorage userStorage;
+    private final GuardedCache<User> users;
+
+    public CachingUserStorage(@Qualifier("userDbStorage") UserStorage userStorage,
+                              @Value("${filmorate.cache.users.maximum-size:10000}") long maximumSize,
+                              @Value("${filmorate.cache.users.expire-after-write:PT10M}") Duration expireAfterWrite,
+                              ObjectProvider<MeterRegistry> meterRegistry) {
+        this.userStorage = userStorage;
+        Cache<Long, User> cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+        this.users = new GuardedCache<>(cache, CachingUserStorage::copy);
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "users"));
+    }
+
+    @Override
+    public Collection<User> getAllUsers() {
+        return userStorage.getAllUsers();
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        return userStorage.getUsersPage(afterId, limit);
+    }
+
+    @Override
+    public User createUser(User user) {
+        return userStorage.createUser(user);
+    }
+
+    @Override
+    public User updateUser(User user) {
+        User updated = userStorage.updateUser(user);
+        evict(user.getId());
+        return updated;
+    }
+
+    @Override
+    public Optional<User> findUserById(Long id) {
+        return users.get(id, userStorage::findUserById);
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return users.contains(id) || userStorage.existsById(id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return userStorage.findExistingIds(ids);
+    }
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids, boolean withFriends) {
+        return userStorage.findUsersByIds(ids, withFriends);
+    }
+
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        userStorage.addFriend(userId, friendId);
+        evict(userId);
+    }
+
+    @Override
+    public void addFriends(Collection<Friendship> friendships) {
+        userStorage.addFriends(friendships);
+        friendships.stream().map(Friendship::getUserId).distinct().forEach(this::evict);
+    }
+
+    @Override
+    public void deleteFriend(Long userId, Long friendId) {
+        userStorage.deleteFriend(userId, friendId);
+        evict(userId);
+    }
+
+    @Override
+    public Collection<User> showFriends(Long userId, boolean withFriends) {
+        return userStorage.showFriends(userId, withFriends);
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends) {
+        return userStorage.showCommonFriends(userId, friendId, withFriends);
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        return userStorage.showCommonFriends(userIds, withFriends);
+    }
+
+    @Override
+    public List<Long> findSuggestedFriendIds(Long userId, int count) {
+        return userStorage.findSuggestedFriendIds(userId, count);
+    }
+
+    /**
+     * Запись сбрасывается сразу и еще раз после завершения транзакции: до фиксации параллельное чтение
+     * на другом соединении может снова положить в кэш прежнюю строку.
+     */
+    private void evict(Long userId) {
+        users.invalidate(userId);
+        TransactionHooks.afterCompletion(() -> users.invalidate(userId));
+    }
+
+    private static User copy(User cached) {
+        User user = new User(cached.getId(), cached.getEmail(), cached.getLogin(), cached.getName(), cached.getBirthday());
+        user.setFriends(cached.getFriends());
+        return user;
+    }
+}
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.storage.cacheStorage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш по id, который загружает записи вне Cache.get(key, loader): тот выполняет загрузку внутри compute
+ * ConcurrentHashMap под монитором, и виртуальный поток на время запроса к БД закрепляется за несущим.
+ * Чтобы сброс, случившийся во время загрузки, не терялся, у каждого ключа есть поколение (одно на полосу ключей),
+ * которое увеличивает invalidate. Загруженное значение, поколение которого успело смениться, из кэша убирается.
+ * Записи изменяемые, поэтому наружу отдаются только их копии: вызывающий код не может поменять кэш для остальных.
+ */
+final class GuardedCache<V> {
+
+    private static final int STRIPES = 256;
+
+    private final Cache<Long, V> cache;
+    private final UnaryOperator<V> copy;
+    private final AtomicLongArray generations = new AtomicLongArray(STRIPES);
+
+    GuardedCache(Cache<Long, V> cache, UnaryOperator<V> copy) {
+        this.cache = cache;
+        this.copy = copy;
+    }
+
+    boolean contains(Long id) {
+        return cache.getIfPresent(id) != null;
+    }
+
+    Optional<V> get(Long id, Function<Long, Optional<V>> loader) {
+        V cached = cache.getIfPresent(id);
+        if (cached != null) {
+            return Optional.of(copy.apply(cached));
+        }
+        long generation = generations.get(stripe(id));
+        Optional<V> loaded = loader.apply(id);
+        loaded.ifPresent(value -> put(id, value, generation));
+        return loaded.map(copy);
+    }
+
+    /**
+     * Возвращает найденные записи по id; отсутствующие в кэше загружаются одним вызовом loader.
+     */
+    Map<Long, V> getAll(Collection<Long> ids, Function<List<Long>, Map<Long, V>> loader) {
+        Map<Long, V> found = new HashMap<>();
+        cache.getAllPresent(ids).forEach((id, value) -> found.put(id, copy.apply(value)));
+        Map<Long, Long> missing = new LinkedHashMap<>();
+        for (Long id : ids) {
+            if (!found.containsKey(id)) {
+                missing.putIfAbsent(id, generations.get(stripe(id)));
+            }
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        Map<Long, V> loaded = loader.apply(new ArrayList<>(missing.keySet()));
+        loaded.forEach((id, value) -> {
+            put(id, value, missing.get(id));
+            found.put(id, copy.apply(value));
+        });
+        return found;
+    }
+
+    /**
+     * Поколение увеличивается до сброса записи: загрузка, положившая значение позже, увидит новое поколение
+     * и уберет его сама.
+     */
+    void invalidate(Long id) {
+        generations.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    private void put(Long id, V value, long generation) {
+        cache.put(id, value);
+        if (generations.get(stripe(id)) != generation) {
+            cache.invalidate(id);
+        }
+    }
+
+    private static int stripe(Long id) {
+        return Long.hashCode(id) & (STRIPES - 1);
+    }
+}
@@ -1,6 +1,5 @@
 package ru.yandex.practicum.filmorate.storage.dbStorage;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
@@ -9,56 +8,106 @@ import ru.yandex.practicum.filmorate.exceptions.InternalServerException;
 
 import java.sql.PreparedStatement;
 import java.sql.Statement;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
-@RequiredArgsConstructor
+/**
+ * Общие запросы хранилищ в БД. Первым аргументом передается имя запроса для метрик (тег query),
+ * например «film.findById»: оно не зависит от текста запроса, собранного под конкретный список IN.
+ */
 public class BaseQuery<T> {
+    protected static final int CHUNK_SIZE = 500;
+
     protected final JdbcTemplate jdbc;
     protected final RowMapper<T> mapper;
+    protected final QueryMetrics metrics;
+    protected final ReplicaRouting routing;
 
-    protected Optional<T> findOne(String query, Object... params) {
-        try {
-            T result = jdbc.queryForObject(query, mapper, params);
-            return Optional.ofNullable(result);
-        } catch (EmptyResultDataAccessException ignored) {
-            return Optional.empty();
-        }
+    public BaseQuery(JdbcTemplate jdbc, RowMapper<T> mapper, QueryMetrics metrics, ReplicaRouting routing) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+        this.metrics = metrics;
+        this.routing = routing;
+    }
+
+    protected Optional<T> findOne(String name, String query, Object... params) {
+        return metrics.record(name, () -> {
+            try {
+                T result = jdbc.queryForObject(query, mapper, params);
+                metrics.recordRows(name, 1);
+                return Optional.ofNullable(result);
+            } catch (EmptyResultDataAccessException ignored) {
+                metrics.recordRows(name, 0);
+                return Optional.empty();
+            }
+        });
+    }
+
+    protected boolean exists(String name, String query, Object... params) {
+        return metrics.record(name, () -> Boolean.TRUE.equals(jdbc.queryForObject(query, Boolean.class, params)));
     }
 
-    protected List<T> findMany(String query, Object... params) {
-        return jdbc.query(query, mapper, params);
+    protected List<T> findMany(String name, String query, Object... params) {
+        List<T> result = metrics.record(name, () -> jdbc.query(query, mapper, params));
+        metrics.recordRows(name, result.size());
+        return result;
     }
 
-    protected boolean delete(String query, long id) {
-        int rowsDeleted = jdbc.update(query, id);
+    protected boolean delete(String name, String query, Object... params) {
+        int rowsDeleted = updateRows(name, query, params);
         return rowsDeleted > 0;
     }
 
-    protected void update(String query, Object... params) {
-        int rowsUpdated = jdbc.update(query, params);
+    protected void update(String name, String query, Object... params) {
+        int rowsUpdated = updateRows(name, query, params);
         if (rowsUpdated == 0) {
             throw new InternalServerException("Не удалось обновить данные");
         }
     }
 
-    protected long insert(String query, Object... params) {
+    /**
+     * Вставка с возвратом сгенерированного ключа. Запрос готовится на каждый вызов, но H2 берет разобранную
+     * команду из кэша соединения (QUERY_CACHE_SIZE в URL), так что повторный разбор SQL не происходит.
+     */
+    protected long insert(String name, String query, Object... params) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbc.update(connection -> {
+        metrics.run(name, () -> jdbc.update(connection -> {
             PreparedStatement ps = connection
                     .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
             for (int idx = 0; idx < params.length; idx++) {
                 ps.setObject(idx + 1, params[idx]);
             }
             return ps;
-        }, keyHolder);
+        }, keyHolder));
 
         Long id = keyHolder.getKeyAs(Long.class);
 
         if (id != null) {
+            metrics.recordRows(name, 1);
             return id;
         } else {
             throw new InternalServerException("Не удалось сохранить данные");
         }
     }
+
+    private int updateRows(String name, String query, Object... params) {
+        int rows = metrics.record(name, () -> jdbc.update(query, params));
+        metrics.recordRows(name, rows);
+        return rows;
+    }
+
+    protected static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    protected static void forEachChunk(List<Long> ids, ChunkQuery query) {
+        for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+            query.run(placeholders(chunk.size()), chunk.toArray());
+        }
+    }
+
+    @FunctionalInterface
+    protected interface ChunkQuery {
+        void run(String placeholders, Object[] params);
+    }
 }
@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Принудительная запись зафиксированных транзакций основной БД на диск. H2 MVStore пишет их фоновым потоком
+ * с задержкой WRITE_DELAY, и до этого зафиксированное изменение теряется при падении процесса.
+ */
+@Component
+public class DatabaseCheckpoint {
+
+    private final JdbcTemplate jdbc;
+    private final QueryMetrics metrics;
+
+    public DatabaseCheckpoint(JdbcTemplate jdbc, QueryMetrics metrics) {
+        this.jdbc = jdbc;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Возвращает управление, когда все транзакции, зафиксированные до вызова, записаны на диск.
+     */
+    public void sync() {
+        metrics.run("db.checkpointSync", () -> jdbc.execute("CHECKPOINT SYNC"));
+    }
+}
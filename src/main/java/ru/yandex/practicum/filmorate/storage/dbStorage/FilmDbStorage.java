@@ -5,79 +5,82 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
 import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting.Table;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
-import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
 
 import java.sql.Date;
 
 import java.util.*;
+import java.util.stream.Stream;
 
 @Slf4j
 @Repository("filmDbStorage")
 public class FilmDbStorage extends BaseQuery<Film> implements FilmStorage {
 
     private static final String FIND_ALL_QUERY = """
-                SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name AS rating
+                SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, f.likes_count, m.name AS rating
                 FROM films f
                 LEFT JOIN MPA m ON f.mpa_id = m.mpa_id
             """;
+    private static final String FIND_PAGE_QUERY = FIND_ALL_QUERY + " WHERE f.film_id > ? ORDER BY f.film_id LIMIT ?";
     private static final String INSERT_QUERY = "INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES (?, ?, ?, ?, ?)";
-    private static final String FIND_BY_ID_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name AS rating FROM films f " +
+    private static final String FIND_BY_ID_QUERY = "SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, f.likes_count, m.name AS rating FROM films f " +
             "LEFT JOIN MPA m ON f.mpa_id = m.mpa_id " +
             "WHERE f.film_id = ?";
+    private static final String EXISTS_QUERY = "SELECT EXISTS (SELECT 1 FROM films WHERE film_id = ?)";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT film_id FROM films WHERE film_id IN (%s)";
+    private static final String HAS_LIKE_QUERY = "SELECT EXISTS (SELECT 1 FROM user_likes WHERE user_id = ? AND film_id = ?)";
     private static final String UPDATE_QUERY = "UPDATE films SET name = ?, description = ?, release_date = ?, duration = ?, mpa_id = ? WHERE film_id = ?";
     private static final String DELETE_QUERY = "DELETE FROM films WHERE film_id = ?";
+    private static final String DELETE_GENRES_QUERY = "DELETE FROM film_genre WHERE film_id = ?";
+    private static final String INSERT_GENRES_QUERY = "INSERT INTO film_genre (film_id, genre_id) VALUES %s";
+    private static final String FIND_BY_IDS_QUERY = FIND_ALL_QUERY + " WHERE f.film_id IN (%s)";
+    private static final String DELETE_LIKE_QUERY = "DELETE FROM user_likes WHERE film_id = ? AND user_id = ?";
+    private static final String FIND_EXISTING_LIKES_QUERY = "SELECT film_id, user_id FROM user_likes WHERE (film_id, user_id) IN (%s)";
+    private static final String INSERT_LIKE_QUERY = "INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)";
+    private static final String ADD_LIKES_QUERY = "UPDATE films SET likes_count = likes_count + ? WHERE film_id = ?";
+    private static final String INCREMENT_LIKES_QUERY = "UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?";
+    private static final String DECREMENT_LIKES_QUERY = "UPDATE films SET likes_count = likes_count - 1 WHERE film_id = ?";
+
+    private final FilmHydrator hydrator;
+    private final FilmLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final CatalogVersions versions;
 
     @Autowired
-    public FilmDbStorage(JdbcTemplate jdbc, @Qualifier("filmRowMapper") FilmRowMapper mapper) {
-        super(jdbc, mapper);
+    public FilmDbStorage(JdbcTemplate jdbc, @Qualifier("filmRowMapper") FilmRowMapper mapper, FilmHydrator hydrator,
+                         FilmLeaderboard leaderboard, LikeMatrix likeMatrix, CatalogVersions versions, QueryMetrics metrics,
+                         ReplicaRouting routing) {
+        super(jdbc, mapper, metrics, routing);
+        this.hydrator = hydrator;
+        this.leaderboard = leaderboard;
+        this.likeMatrix = likeMatrix;
+        this.versions = versions;
     }
 
     @Override
-    public Collection<Film> getAllFilms() {
-        List<Film> films = findMany(FIND_ALL_QUERY);
+    public Collection<Film> getAllFilms(boolean withLikers) {
+        return routing.readTable(Table.FILMS, () -> hydrator.hydrate(findMany("film.findAll", FIND_ALL_QUERY), withLikers));
+    }
 
-        if (films.isEmpty()) {
-            return films;
-        }
-        Map<Long, Set<Long>> likesByFilmId = new HashMap<>();
-        String likesQuery = "SELECT film_id, user_id FROM user_likes";
-        jdbc.query(likesQuery, rs -> {
-            while (rs.next()) {
-                long filmId = rs.getLong("film_id");
-                long userId = rs.getLong("user_id");
-                likesByFilmId.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-            }
-        });
-        Map<Long, Set<Genre>> genresByFilmId = new HashMap<>();
-        String genresQuery = """
-                    SELECT fg.film_id, g.genre_id, g.genre
-                    FROM film_genre fg
-                    JOIN genre g ON fg.genre_id = g.genre_id
-                """;
-        jdbc.query(genresQuery, rs -> {
-            while (rs.next()) {
-                long filmId = rs.getLong("film_id");
-                Genre genre = new Genre();
-                genre.setId(rs.getInt("genre_id"));
-                genre.setName(rs.getString("genre"));
-                genresByFilmId.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
-            }
-        });
-        for (Film film : films) {
-            film.setGenres(genresByFilmId.getOrDefault(film.getId(), Set.of()));
-            film.setIdOfUsersWhoLiked(likesByFilmId.getOrDefault(film.getId(), Set.of()));
-        }
-        return films;
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers) {
+        return routing.readTable(Table.FILMS, () -> hydrator.hydrate(findMany("film.findPage", FIND_PAGE_QUERY, afterId, limit), withLikers));
     }
 
     @Override
+    @Transactional
     public Film createFilm(Film film) {
-        long id = insert(INSERT_QUERY,
+        long id = insert("film.insert", INSERT_QUERY,
                 film.getName(),
                 film.getDescription(),
                 Date.valueOf(film.getReleaseDate()),
@@ -86,127 +89,196 @@ public class FilmDbStorage extends BaseQuery<Film> implements FilmStorage {
 
         film.setId(id);
         insertGenresForFilm(id, film.getGenres());
+        leaderboard.addFilm(id);
+        routing.written(Table.FILMS, id);
+        versions.filmChanged(id);
         return film;
     }
 
     @Override
+    @Transactional
     public Film updateFilm(Film film) {
-        update(UPDATE_QUERY, film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(), film.getRating().getId(), film.getId());
-        jdbc.update("DELETE FROM film_genre WHERE film_id = ?", film.getId());
+        update("film.update", UPDATE_QUERY, film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration(), film.getRating().getId(), film.getId());
+        metrics.run("film.deleteGenres", () -> jdbc.update(DELETE_GENRES_QUERY, film.getId()));
         insertGenresForFilm(film.getId(), film.getGenres());
-        return findFilmById(film.getId()).orElseThrow(() -> new NotFoundException("Ошибка создания фильма"));
+        routing.written(Table.FILMS, film.getId());
+        versions.filmChanged(film.getId());
+        return findFilmById(film.getId(), false).orElseThrow(() -> new NotFoundException("Ошибка создания фильма"));
     }
 
     @Override
     public void deleteFilm(Long filmId) {
-        delete(DELETE_QUERY, filmId);
+        if (delete("film.delete", DELETE_QUERY, filmId)) {
+            leaderboard.removeFilm(filmId);
+            likeMatrix.removeFilm(filmId);
+            routing.written(Table.FILMS, filmId);
+            versions.filmChanged(filmId);
+        }
     }
 
     @Override
-    public Optional<Film> findFilmById(Long filmId) {
-        Optional<Film> film = findOne(FIND_BY_ID_QUERY, filmId);
-        film.ifPresent(value -> {
-            value.setGenres(getGenresForFilm(filmId));
-            value.setIdOfUsersWhoLiked(getIdOfUsersWhoLiked(filmId));
+    public Optional<Film> findFilmById(Long filmId, boolean withLikers) {
+        return routing.readRow(Table.FILMS, filmId, () -> {
+            Optional<Film> film = findOne("film.findById", FIND_BY_ID_QUERY, filmId);
+            film.ifPresent(value -> hydrator.hydrate(List.of(value), withLikers));
+            return film;
         });
-        return film;
     }
 
+    /**
+     * Проверки существования предшествуют записи, поэтому, как и запись, идут на основную БД.
+     */
     @Override
-    public void addLike(Long filmId, Long userId) {
-        String sql = "INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)";
-        update(sql, filmId, userId);
+    public boolean existsById(Long id) {
+        return exists("film.exists", EXISTS_QUERY, id);
     }
 
     @Override
-    public void deleteLike(Long filmId, Long userId) {
-        String sql = "DELETE FROM user_likes WHERE film_id = ? AND user_id = ?";
-        update(sql, filmId, userId);
+    public boolean hasLike(Long filmId, Long userId) {
+        return exists("film.hasLike", HAS_LIKE_QUERY, userId, filmId);
     }
 
     @Override
-    public Collection<Film> showMostLikedFilms(int count) {
-        String sql = """
-                SELECT f.film_id, f.name, f.description, f.release_date, f.duration, f.mpa_id, m.name AS rating
-                FROM films f
-                LEFT JOIN MPA m ON f.mpa_id = m.mpa_id
-                LEFT JOIN user_likes ul ON f.film_id = ul.film_id
-                GROUP BY f.film_id, m.name
-                ORDER BY COUNT(ul.user_id) DESC
-                LIMIT ?
-                """;
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        String name = "film.findExistingIds";
+        forEachChunk(new ArrayList<>(ids), (placeholders, params) -> existing.addAll(metrics.record(name, () ->
+                jdbc.queryForList(FIND_EXISTING_IDS_QUERY.formatted(placeholders), Long.class, params))));
+        return existing;
+    }
 
-        List<Film> films = findMany(sql, count);
+    @Override
+    public Set<Like> findExistingLikes(Collection<Like> likes) {
+        Set<Like> existing = new HashSet<>();
+        List<Like> pending = new ArrayList<>(likes);
+        String name = "film.findExistingLikes";
+        for (int from = 0; from < pending.size(); from += CHUNK_SIZE) {
+            List<Like> chunk = pending.subList(from, Math.min(from + CHUNK_SIZE, pending.size()));
+            String pairs = String.join(", ", Collections.nCopies(chunk.size(), "(?, ?)"));
+            Object[] params = chunk.stream()
+                    .flatMap(like -> Stream.of(like.getFilmId(), like.getUserId()))
+                    .toArray();
+            metrics.run(name, () -> jdbc.query(FIND_EXISTING_LIKES_QUERY.formatted(pairs), (rs) -> {
+                existing.add(new Like(rs.getLong("film_id"), rs.getLong("user_id")));
+            }, params));
+        }
+        metrics.recordRows(name, existing.size());
+        return existing;
+    }
+
+    @Override
+    @Transactional
+    public void addLike(Long filmId, Long userId) {
+        update("film.insertLike", INSERT_LIKE_QUERY, filmId, userId);
+        update("film.incrementLikes", INCREMENT_LIKES_QUERY, filmId);
+        leaderboard.changeLikes(filmId, 1);
+        likeMatrix.addLike(filmId, userId);
+        routing.written(Table.FILMS, filmId);
+        versions.filmChanged(filmId);
+    }
 
-        if (films.isEmpty()) {
-            return films;
+    @Override
+    @Transactional
+    public void addLikes(Collection<Like> likes) {
+        List<Object[]> rows = new ArrayList<>(likes.size());
+        Map<Long, Integer> addedByFilmId = new HashMap<>();
+        for (Like like : likes) {
+            rows.add(new Object[]{like.getFilmId(), like.getUserId()});
+            addedByFilmId.merge(like.getFilmId(), 1, Integer::sum);
         }
-        Map<Long, Set<Long>> likesByFilmId = new HashMap<>();
-        String likesQuery = "SELECT film_id, user_id FROM user_likes WHERE film_id IN (?)";
-        jdbc.query(likesQuery, new Object[]{films.stream().map(Film::getId).toArray()}, rs -> {
-            while (rs.next()) {
-                long filmId = rs.getLong("film_id");
-                long userId = rs.getLong("user_id");
-                likesByFilmId.computeIfAbsent(filmId, k -> new HashSet<>()).add(userId);
-            }
-        });
-        Map<Long, Set<Genre>> genresByFilmId = new HashMap<>();
-        String genresQuery = """
-                    SELECT fg.film_id, g.genre_id, g.genre
-                    FROM film_genre fg
-                    JOIN genre g ON fg.genre_id = g.genre_id
-                    WHERE fg.film_id IN (?)
-                """;
-        jdbc.query(genresQuery, new Object[]{films.stream().map(Film::getId).toArray()}, rs -> {
-            while (rs.next()) {
-                long filmId = rs.getLong("film_id");
-                Genre genre = new Genre();
-                genre.setId(rs.getInt("genre_id"));
-                genre.setName(rs.getString("genre"));
-                genresByFilmId.computeIfAbsent(filmId, k -> new HashSet<>()).add(genre);
+        metrics.run("film.insertLike", () -> jdbc.batchUpdate(INSERT_LIKE_QUERY, rows));
+        metrics.recordRows("film.insertLike", rows.size());
+        List<Object[]> counts = addedByFilmId.entrySet().stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .toList();
+        metrics.run("film.addLikes", () -> jdbc.batchUpdate(ADD_LIKES_QUERY, counts));
+        addedByFilmId.forEach(leaderboard::changeLikes);
+        likes.forEach(like -> likeMatrix.addLike(like.getFilmId(), like.getUserId()));
+        routing.written(Table.FILMS, addedByFilmId.keySet());
+        versions.filmsChanged(addedByFilmId.keySet());
+    }
+
+    @Override
+    @Transactional
+    public void deleteLike(Long filmId, Long userId) {
+        update("film.deleteLike", DELETE_LIKE_QUERY, filmId, userId);
+        update("film.decrementLikes", DECREMENT_LIKES_QUERY, filmId);
+        leaderboard.changeLikes(filmId, -1);
+        likeMatrix.removeLike(filmId, userId);
+        routing.written(Table.FILMS, filmId);
+        versions.filmChanged(filmId);
+    }
+
+    @Override
+    @Transactional
+    public void deleteLikes(Collection<Like> likes) {
+        List<Like> pending = new ArrayList<>(likes);
+        List<Object[]> rows = pending.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .toList();
+        int[] deleted = metrics.record("film.deleteLike", () -> jdbc.batchUpdate(DELETE_LIKE_QUERY, rows));
+        Map<Long, Integer> removedByFilmId = new HashMap<>();
+        for (int i = 0; i < deleted.length; i++) {
+            if (deleted[i] > 0) {
+                Like like = pending.get(i);
+                removedByFilmId.merge(like.getFilmId(), 1, Integer::sum);
+                likeMatrix.removeLike(like.getFilmId(), like.getUserId());
             }
-        });
-        for (Film film : films) {
-            film.setGenres(genresByFilmId.getOrDefault(film.getId(), Set.of()));
-            film.setIdOfUsersWhoLiked(likesByFilmId.getOrDefault(film.getId(), Set.of()));
         }
+        metrics.recordRows("film.deleteLike", removedByFilmId.values().stream().mapToInt(Integer::intValue).sum());
+        List<Object[]> counts = removedByFilmId.entrySet().stream()
+                .map(entry -> new Object[]{-entry.getValue(), entry.getKey()})
+                .toList();
+        metrics.run("film.addLikes", () -> jdbc.batchUpdate(ADD_LIKES_QUERY, counts));
+        removedByFilmId.forEach((filmId, removed) -> leaderboard.changeLikes(filmId, -removed));
+        routing.written(Table.FILMS, removedByFilmId.keySet());
+        versions.filmsChanged(removedByFilmId.keySet());
+    }
 
-        return films;
+    @Override
+    public List<Long> findMostLikedFilmIds(int count) {
+        return leaderboard.top(count);
     }
 
-    private Set<Genre> getGenresForFilm(Long filmId) {
-        String sql = """
-                    SELECT g.genre_id, g.genre
-                    FROM film_genre fg
-                    JOIN genre g ON fg.genre_id = g.genre_id
-                    WHERE fg.film_id = ?
-                    ORDER BY g.genre_id
-                """;
-        return new LinkedHashSet<>(jdbc.query(sql, new GenreRowMapper(), filmId));
+    @Override
+    public List<Long> findRecommendedFilmIds(Long userId, int count) {
+        return likeMatrix.recommend(userId, count);
     }
 
-    private Set<Long> getIdOfUsersWhoLiked(Long filmId) {
-        String sql = "SELECT user_id FROM user_likes WHERE film_id = ?";
-        List<Long> userIds = jdbc.queryForList(sql, Long.class, filmId);
-        return new HashSet<>(userIds);
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids, boolean withLikers) {
+        return routing.readRows(Table.FILMS, ids, () -> loadFilmsByIds(ids, withLikers));
+    }
+
+    private List<Film> loadFilmsByIds(List<Long> ids, boolean withLikers) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        String name = "film.findByIds";
+        forEachChunk(ids, (placeholders, params) -> {
+            for (Film film : findMany(name, FIND_BY_IDS_QUERY.formatted(placeholders), params)) {
+                filmsById.put(film.getId(), film);
+            }
+        });
+        List<Film> films = new ArrayList<>(filmsById.size());
+        for (Long id : ids) {
+            Film film = filmsById.get(id);
+            if (film != null) {
+                films.add(film);
+            }
+        }
+        return hydrator.hydrate(films, withLikers);
     }
 
     private void insertGenresForFilm(Long filmId, Set<Genre> genres) {
         if (genres.isEmpty()) return;
 
-        StringBuilder sql = new StringBuilder("INSERT INTO film_genre (film_id, genre_id) VALUES ");
         List<Object> params = new ArrayList<>();
-
-        int count = 0;
         for (Genre genre : genres) {
-            if (count > 0) sql.append(", ");
-            sql.append("(?, ?)");
             params.add(filmId);
             params.add(genre.getId());
-            count++;
         }
 
-        jdbc.update(sql.toString(), params.toArray());
+        String sql = INSERT_GENRES_QUERY.formatted(String.join(", ", Collections.nCopies(genres.size(), "(?, ?)")));
+        metrics.run("film.insertGenres", () -> jdbc.update(sql, params.toArray()));
     }
 }
 
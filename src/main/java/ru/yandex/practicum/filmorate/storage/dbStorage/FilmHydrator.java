@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+
+import java.util.*;
+
+/**
+ * Догружает жанры и лайки для списка фильмов: один запрос на связь
+ * для каждой пачки из BaseQuery.CHUNK_SIZE идентификаторов вместо запросов на каждый фильм.
+ */
+@Component
+public class FilmHydrator {
+
+    private static final String GENRES_QUERY = """
+                SELECT fg.film_id, g.genre_id, g.genre
+                FROM film_genre fg
+                JOIN genre g ON fg.genre_id = g.genre_id
+                WHERE fg.film_id IN (%s)
+                ORDER BY fg.film_id, g.genre_id
+            """;
+    private static final String LIKES_QUERY = "SELECT film_id, user_id FROM user_likes WHERE film_id IN (%s) ORDER BY film_id, user_id";
+
+    private final JdbcTemplate jdbc;
+    private final QueryMetrics metrics;
+
+    public FilmHydrator(JdbcTemplate jdbc, QueryMetrics metrics) {
+        this.jdbc = jdbc;
+        this.metrics = metrics;
+    }
+
+    public <C extends Collection<Film>> C hydrate(C films) {
+        return hydrate(films, true);
+    }
+
+    /**
+     * При withLikers = false user_likes не читается: у фильмов остается likesCount из строки films,
+     * а idOfUsersWhoLiked обнуляется.
+     */
+    public <C extends Collection<Film>> C hydrate(C films, boolean withLikers) {
+        if (films.isEmpty()) {
+            return films;
+        }
+        List<Long> ids = films.stream().map(Film::getId).toList();
+        Map<Long, Set<Genre>> genresByFilmId = loadGenres(ids);
+        Map<Long, SortedLongSet> likesByFilmId = withLikers ? loadLikes(ids) : Map.of();
+        for (Film film : films) {
+            film.setGenres(genresByFilmId.getOrDefault(film.getId(), new LinkedHashSet<>()));
+            if (withLikers) {
+                SortedLongSet likes = likesByFilmId.getOrDefault(film.getId(), new SortedLongSet());
+                film.setIdOfUsersWhoLiked(likes);
+                film.setLikesCount(likes.size());
+            } else {
+                film.setIdOfUsersWhoLiked(null);
+            }
+        }
+        return films;
+    }
+
+    public Map<Long, Set<Genre>> loadGenres(List<Long> filmIds) {
+        Map<Long, Set<Genre>> genresByFilmId = new HashMap<>();
+        BaseQuery.forEachChunk(filmIds, (placeholders, params) -> metrics.run("film.genres", () ->
+                jdbc.query(GENRES_QUERY.formatted(placeholders), rs -> {
+                    Genre genre = new Genre(rs.getInt("genre_id"), rs.getString("genre"));
+                    genresByFilmId.computeIfAbsent(rs.getLong("film_id"), k -> new LinkedHashSet<>()).add(genre);
+                }, params)));
+        return genresByFilmId;
+    }
+
+    /**
+     * Лайки приходят упорядоченными по user_id, поэтому SortedLongSet наполняется добавлением в конец.
+     */
+    public Map<Long, SortedLongSet> loadLikes(List<Long> filmIds) {
+        Map<Long, SortedLongSet> likesByFilmId = new HashMap<>();
+        BaseQuery.forEachChunk(filmIds, (placeholders, params) -> metrics.run("film.likes", () ->
+                jdbc.query(LIKES_QUERY.formatted(placeholders), rs -> {
+                    likesByFilmId.computeIfAbsent(rs.getLong("film_id"), k -> new SortedLongSet()).add(rs.getLong("user_id"));
+                }, params)));
+        likesByFilmId.values().forEach(SortedLongSet::trimToSize);
+        return likesByFilmId;
+    }
+}
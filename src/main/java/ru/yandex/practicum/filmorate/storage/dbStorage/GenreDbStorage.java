@@ -20,17 +20,18 @@ public class GenreDbStorage extends BaseQuery<Genre> implements GenreStorage {
     private static final String FIND_ONE_QUERY = "SELECT * FROM genre WHERE genre_id = ?";
 
     @Autowired
-    public GenreDbStorage(JdbcTemplate jdbc, @Qualifier("genreRowMapper") GenreRowMapper mapper) {
-        super(jdbc, mapper);
+    public GenreDbStorage(JdbcTemplate jdbc, @Qualifier("genreRowMapper") GenreRowMapper mapper, QueryMetrics metrics,
+                          ReplicaRouting routing) {
+        super(jdbc, mapper, metrics, routing);
     }
 
     @Override
     public List<Genre> getAllGenres() {
-        return findMany(FIND_ALL_QUERY);
+        return routing.read(() -> findMany("genre.findAll", FIND_ALL_QUERY));
     }
 
     @Override
     public Optional<Genre> getGenreById(int id) {
-        return findOne(FIND_ONE_QUERY, id);
+        return routing.read(() -> findOne("genre.findById", FIND_ONE_QUERY, id));
     }
 }
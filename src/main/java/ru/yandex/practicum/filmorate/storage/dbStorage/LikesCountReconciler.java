@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+
+import java.util.*;
+
+/**
+ * Периодически сверяет films.likes_count с фактическим числом строк в user_likes.
+ * При шардировании лайки считаются на всех шардах параллельно и суммируются, расхождения исправляются пакетом.
+ * Первая сверка идет при старте: в базах, созданных до появления films.likes_count, столбец заполнен нулями.
+ */
+@Slf4j
+@Component
+public class LikesCountReconciler {
+
+    private static final String RECONCILE_QUERY = """
+                UPDATE films f
+                SET likes_count = (SELECT COUNT(*) FROM user_likes ul WHERE ul.film_id = f.film_id)
+                WHERE likes_count <> (SELECT COUNT(*) FROM user_likes ul WHERE ul.film_id = f.film_id)
+            """;
+    private static final String SHARD_COUNTS_QUERY = "SELECT film_id, COUNT(*) AS likes FROM user_likes GROUP BY film_id";
+    private static final String COUNTS_QUERY = "SELECT film_id, likes_count FROM films";
+    private static final String SET_COUNT_QUERY = "UPDATE films SET likes_count = ? WHERE film_id = ? AND likes_count = ?";
+
+    private final JdbcTemplate jdbc;
+    private final UserShards shards;
+    private final FilmLeaderboard leaderboard;
+    private final CatalogVersions versions;
+
+    public LikesCountReconciler(JdbcTemplate jdbc, UserShards shards, FilmLeaderboard leaderboard, CatalogVersions versions) {
+        this.jdbc = jdbc;
+        this.shards = shards;
+        this.leaderboard = leaderboard;
+        this.versions = versions;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcileOnStartup() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${filmorate.likes-count.reconcile-interval:PT1H}",
+            initialDelayString = "${filmorate.likes-count.reconcile-interval:PT1H}")
+    public int reconcile() {
+        int fixed = shards.isSharded() ? reconcileShards() : jdbc.update(RECONCILE_QUERY);
+        if (fixed > 0) {
+            log.warn("Счетчик лайков расходился с user_likes у {} фильмов, исправлено", fixed);
+            leaderboard.markStale();
+            versions.allFilmsChanged();
+        }
+        return fixed;
+    }
+
+    /**
+     * Сравнивает суммы лайков по шардам со счетчиками в основной БД. Шарды и основная БД читаются не атомарно,
+     * поэтому счетчик меняется, только если не изменился с момента чтения; лайк, поставленный между чтениями,
+     * может оставить расхождение на единицу до следующей сверки.
+     */
+    private int reconcileShards() {
+        Map<Long, Long> likesByFilmId = new HashMap<>();
+        for (Map<Long, Long> shardLikes : shards.scatter(shard -> {
+            Map<Long, Long> counts = new HashMap<>();
+            shard.query(SHARD_COUNTS_QUERY, rs -> {
+                counts.put(rs.getLong("film_id"), rs.getLong("likes"));
+            });
+            return counts;
+        })) {
+            shardLikes.forEach((filmId, likes) -> likesByFilmId.merge(filmId, likes, Long::sum));
+        }
+        List<Object[]> corrections = new ArrayList<>();
+        jdbc.query(COUNTS_QUERY, rs -> {
+            long filmId = rs.getLong("film_id");
+            long counted = rs.getLong("likes_count");
+            long actual = likesByFilmId.getOrDefault(filmId, 0L);
+            if (counted != actual) {
+                corrections.add(new Object[]{actual, filmId, counted});
+            }
+        });
+        return Arrays.stream(jdbc.batchUpdate(SET_COUNT_QUERY, corrections)).sum();
+    }
+}
@@ -0,0 +1,75 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Метрики SQL-запросов по имени запроса: время выполнения (filmorate.db.query, с тегом исключения)
+ * и число возвращенных или измененных строк (filmorate.db.query.rows).
+ * Без MeterRegistry, например в тестах и бенчмарках, запросы выполняются без замеров.
+ */
+@Component
+public class QueryMetrics {
+
+    public static final QueryMetrics NOOP = new QueryMetrics((MeterRegistry) null);
+
+    private static final String TIMER = "filmorate.db.query";
+    private static final String ROWS = "filmorate.db.query.rows";
+    private static final String NO_EXCEPTION = "none";
+
+    private final MeterRegistry registry;
+
+    @Autowired
+    public QueryMetrics(ObjectProvider<MeterRegistry> registry) {
+        this(registry.getIfAvailable());
+    }
+
+    public QueryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public <R> R record(String name, Supplier<R> query) {
+        if (registry == null) {
+            return query.get();
+        }
+        Timer.Sample sample = Timer.start(registry);
+        String exception = NO_EXCEPTION;
+        try {
+            return query.get();
+        } catch (RuntimeException e) {
+            exception = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(TIMER)
+                    .description("Время выполнения SQL-запроса")
+                    .tag("query", name)
+                    .tag("exception", exception)
+                    .register(registry));
+        }
+    }
+
+    public void run(String name, Runnable query) {
+        record(name, () -> {
+            query.run();
+            return null;
+        });
+    }
+
+    public void recordRows(String name, int rows) {
+        if (registry == null) {
+            return;
+        }
+        DistributionSummary.builder(ROWS)
+                .description("Число строк, возвращенных или измененных запросом")
+                .baseUnit("rows")
+                .tag("query", name)
+                .register(registry)
+                .record(rows);
+    }
+}
@@ -20,17 +20,18 @@ public class RatingDbStorage extends BaseQuery<Rating> implements RatingStorage
     private static final String FIND_ONE_QUERY = "SELECT * FROM MPA WHERE mpa_id = ?";
 
     @Autowired
-    public RatingDbStorage(JdbcTemplate jdbc, @Qualifier("ratingRowMapper") RatingRowMapper mapper) {
-        super(jdbc, mapper);
+    public RatingDbStorage(JdbcTemplate jdbc, @Qualifier("ratingRowMapper") RatingRowMapper mapper, QueryMetrics metrics,
+                           ReplicaRouting routing) {
+        super(jdbc, mapper, metrics, routing);
     }
 
     @Override
     public List<Rating> getAllRatings() {
-        return findMany(FIND_ALL_QUERY);
+        return routing.read(() -> findMany("rating.findAll", FIND_ALL_QUERY));
     }
 
     @Override
     public Optional<Rating> getRatingById(int id) {
-        return findOne(FIND_ONE_QUERY, id);
+        return routing.read(() -> findOne("rating.findById", FIND_ONE_QUERY, id));
     }
 }
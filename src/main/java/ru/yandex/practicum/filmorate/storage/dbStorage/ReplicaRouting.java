@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.storage.index.TransactionHooks;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Выбор БД для чтений хранилищ при filmorate.datasource.replica.enabled=true: запрос внутри read* получает
+ * соединение ReplicaRoutingDataSource с реплики, если затронутые им строки не менялись за последние
+ * filmorate.datasource.replica.max-lag. Иначе реплика могла еще не получить изменение, и чтение идет на основную БД,
+ * так что после записи через хранилище (лайк, дружба, изменение фильма) она сразу видна в выдаче.
+ * Записи, проверки существования перед записью и все запросы внутри транзакции идут на основную БД.
+ */
+@Component
+public class ReplicaRouting {
+
+    public static final ReplicaRouting PRIMARY_ONLY = new ReplicaRouting(false, Duration.ZERO);
+
+    private static final ThreadLocal<Boolean> REPLICA = new ThreadLocal<>();
+
+    /**
+     * Таблицы, по которым отслеживаются недавние записи: FILMS — фильмы с жанрами и лайками,
+     * USERS — пользователи с друзьями.
+     */
+    public enum Table {
+        FILMS, USERS
+    }
+
+    private final boolean enabled;
+    private final long maxLagNanos;
+    private final Map<Table, Cache<Long, Boolean>> recentRows = new EnumMap<>(Table.class);
+    private final Map<Table, AtomicLong> lastWrites = new EnumMap<>(Table.class);
+
+    @Autowired
+    public ReplicaRouting(@Value("${filmorate.datasource.replica.enabled:false}") boolean enabled,
+                          @Value("${filmorate.datasource.replica.max-lag:PT1S}") Duration maxLag) {
+        this.enabled = enabled;
+        this.maxLagNanos = maxLag.toNanos();
+        long startedAt = System.nanoTime();
+        for (Table table : Table.values()) {
+            recentRows.put(table, Caffeine.newBuilder().expireAfterWrite(maxLag).build());
+            lastWrites.put(table, new AtomicLong(startedAt - maxLagNanos));
+        }
+    }
+
+    /**
+     * Чтение данных, которые хранилища не меняют (справочники): всегда с реплики.
+     */
+    public <R> R read(Supplier<R> query) {
+        return route(true, query);
+    }
+
+    /**
+     * Чтение строк table с переданными id: с реплики, если ни одна из них не менялась за max-lag.
+     */
+    public <R> R readRows(Table table, Collection<Long> ids, Supplier<R> query) {
+        return route(enabled && ids.stream().noneMatch(id -> isRecent(table, id)), query);
+    }
+
+    public <R> R readRow(Table table, Long id, Supplier<R> query) {
+        return route(enabled && !isRecent(table, id), query);
+    }
+
+    /**
+     * Чтение строки id вместе со связанными строками той же таблицы, id которых заранее неизвестны
+     * (например, друзей пользователя). Если строка id давно не менялась, запрос идет на реплику, но когда среди
+     * relatedIds результата есть недавно измененные строки, он повторяется на основной БД.
+     */
+    public <R> R readRowWithRelated(Table table, Long id, Function<R, Collection<Long>> relatedIds, Supplier<R> query) {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return query.get();
+        }
+        if (isRecent(table, id)) {
+            return route(false, query);
+        }
+        R result = route(true, query);
+        if (relatedIds.apply(result).stream().anyMatch(relatedId -> isRecent(table, relatedId))) {
+            return route(false, query);
+        }
+        return result;
+    }
+
+    /**
+     * Чтение всей таблицы или страницы из нее: с реплики, если в таблицу ничего не писали за max-lag.
+     * При непрерывной записи такие чтения идут на основную БД.
+     */
+    public <R> R readTable(Table table, Supplier<R> query) {
+        return route(enabled && System.nanoTime() - lastWrites.get(table).get() >= maxLagNanos, query);
+    }
+
+    /**
+     * Отмечает запись строк table. Отметка ставится сразу и обновляется после завершения транзакции:
+     * max-lag отсчитывается от момента, когда изменение стало видно на основной БД.
+     */
+    public void written(Table table, Collection<Long> ids) {
+        if (!enabled) {
+            return;
+        }
+        mark(table, ids);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionHooks.afterCompletion(() -> mark(table, ids));
+        }
+    }
+
+    public void written(Table table, Long id) {
+        written(table, List.of(id));
+    }
+
+    /**
+     * Нужна ли текущему потоку реплика; читается ReplicaRoutingDataSource при выдаче соединения.
+     */
+    static boolean onReplica() {
+        return Boolean.TRUE.equals(REPLICA.get());
+    }
+
+    private boolean isRecent(Table table, Long id) {
+        return recentRows.get(table).getIfPresent(id) != null;
+    }
+
+    private void mark(Table table, Collection<Long> ids) {
+        Cache<Long, Boolean> rows = recentRows.get(table);
+        ids.forEach(id -> rows.put(id, Boolean.TRUE));
+        lastWrites.get(table).accumulateAndGet(System.nanoTime(), Math::max);
+    }
+
+    /**
+     * Внутри транзакции соединение уже взято с основной БД, поэтому выбор не меняется.
+     * Вложенное чтение выбирает БД само и восстанавливает выбор внешнего.
+     */
+    private <R> R route(boolean replica, Supplier<R> query) {
+        if (!enabled || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return query.get();
+        }
+        Boolean previous = REPLICA.get();
+        REPLICA.set(replica);
+        try {
+            return query.get();
+        } finally {
+            if (previous == null) {
+                REPLICA.remove();
+            } else {
+                REPLICA.set(previous);
+            }
+        }
+    }
+}
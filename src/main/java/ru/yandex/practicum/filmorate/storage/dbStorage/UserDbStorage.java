@@ -5,11 +5,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
 import ru.yandex.practicum.filmorate.model.userModel.Status;
 import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting.Table;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -19,90 +24,230 @@ import java.util.stream.Collectors;
 public class UserDbStorage extends BaseQuery<User> implements UserStorage {
 
     private static final String FIND_ALL_QUERY = "SELECT * FROM users";
+    private static final String FIND_PAGE_QUERY = "SELECT * FROM users WHERE user_id > ? ORDER BY user_id LIMIT ?";
     private static final String INSERT_QUERY = "INSERT INTO users (email, login, name, birthday) " +
             "VALUES (?, ?, ?, ?)";
     private static final String FIND_BY_ID_QUERY = "SELECT * FROM users WHERE user_id = ?";
+    private static final String EXISTS_QUERY = "SELECT EXISTS (SELECT 1 FROM users WHERE user_id = ?)";
+    private static final String FIND_EXISTING_IDS_QUERY = "SELECT user_id FROM users WHERE user_id IN (%s)";
+    private static final String FIND_BY_IDS_QUERY = "SELECT * FROM users WHERE user_id IN (%s)";
+    private static final String MERGE_FRIEND_QUERY = "MERGE INTO friends (user_id, friend_id, status) KEY (user_id, friend_id) VALUES (?, ?, ?)";
+    private static final String ALL_FRIENDS_QUERY = "SELECT user_id, friend_id FROM friends WHERE status = 'CONFIRMED' ORDER BY user_id, friend_id";
+    private static final String FRIENDS_OF_USERS_QUERY = "SELECT user_id, friend_id FROM friends WHERE user_id IN (%s) AND status = 'CONFIRMED' ORDER BY user_id, friend_id";
+    private static final String DELETE_FRIEND_QUERY = "DELETE FROM friends WHERE (user_id = ? AND friend_id = ?)";
     private static final String UPDATE_QUERY = "UPDATE users SET email = ?, login = ?, name = ?, birthday = ? WHERE user_id = ?";
-    private static final String FRIEND_QUERY = "SELECT friend_id FROM friends WHERE user_id = ? AND status = 'CONFIRMED'";
-
+    private static final String FRIEND_QUERY = "SELECT friend_id FROM friends WHERE user_id = ? AND status = 'CONFIRMED' ORDER BY friend_id";
+    private static final String FRIENDS_QUERY = """
+                SELECT u.*
+                FROM friends f
+                JOIN users u ON u.user_id = f.friend_id
+                WHERE f.user_id = ? AND f.status = 'CONFIRMED'
+                ORDER BY u.user_id
+            """;
+    private static final String FRIENDS_WITH_FRIENDS_QUERY = """
+                SELECT u.*, ff.friend_id AS friend_of_friend_id
+                FROM friends f
+                JOIN users u ON u.user_id = f.friend_id
+                LEFT JOIN friends ff ON ff.user_id = u.user_id AND ff.status = 'CONFIRMED'
+                WHERE f.user_id = ? AND f.status = 'CONFIRMED'
+                ORDER BY u.user_id, ff.friend_id
+            """;
+
+    private final UserWithFriendsExtractor withFriendsExtractor;
+    private final FriendGraph friendGraph;
 
     @Autowired
-    public UserDbStorage(JdbcTemplate jdbc, @Qualifier("userRowMapper") UserRowMapper mapper) {
-        super(jdbc, mapper);
+    public UserDbStorage(JdbcTemplate jdbc, @Qualifier("userRowMapper") UserRowMapper mapper,
+                         @Qualifier("userWithFriendsExtractor") UserWithFriendsExtractor withFriendsExtractor,
+                         FriendGraph friendGraph, QueryMetrics metrics, ReplicaRouting routing) {
+        super(jdbc, mapper, metrics, routing);
+        this.withFriendsExtractor = withFriendsExtractor;
+        this.friendGraph = friendGraph;
     }
 
     @Override
     public Collection<User> getAllUsers() {
-        List<User> users = findMany(FIND_ALL_QUERY);
+        return getAllUsers(true);
+    }
+
+    /**
+     * Все пользователи; списки друзей заполняются, только если withFriends = true.
+     */
+    public Collection<User> getAllUsers(boolean withFriends) {
+        return routing.readTable(Table.USERS, () -> withFriends ? loadAllUsers() : findMany("user.findAll", FIND_ALL_QUERY));
+    }
+
+    private List<User> loadAllUsers() {
+        List<User> users = findMany("user.findAll", FIND_ALL_QUERY);
         Map<Long, User> userMap = users.stream()
                 .collect(Collectors.toMap(User::getId, user -> user));
-        String friendsQuery = "SELECT user_id, friend_id FROM friends";
-        jdbc.query(friendsQuery, (rs) -> {
+        metrics.run("user.allFriends", () -> jdbc.query(ALL_FRIENDS_QUERY, (rs) -> {
             long userId = rs.getLong("user_id");
             long friendId = rs.getLong("friend_id");
             User user = userMap.get(userId);
             if (user != null) {
                 user.getFriends().add(friendId);
             }
-        });
+        }));
         return users;
     }
 
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        return getUsersPage(afterId, limit, true);
+    }
+
+    public Collection<User> getUsersPage(long afterId, int limit, boolean withFriends) {
+        return routing.readTable(Table.USERS, () -> {
+            List<User> users = findMany("user.findPage", FIND_PAGE_QUERY, afterId, limit);
+            if (withFriends) {
+                fillFriends(users.stream().collect(Collectors.toMap(User::getId, user -> user)));
+            }
+            return users;
+        });
+    }
+
     @Override
     public User createUser(User user) {
-        long id = insert(INSERT_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
+        long id = insert("user.insert", INSERT_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday());
         user.setId(id);
+        routing.written(Table.USERS, id);
         return user;
     }
 
     @Override
     public User updateUser(User user) {
-        update(UPDATE_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        update("user.update", UPDATE_QUERY, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday(), user.getId());
+        routing.written(Table.USERS, user.getId());
         return user;
     }
 
     @Override
     public Optional<User> findUserById(Long id) {
-        Optional<User> user = findOne(FIND_BY_ID_QUERY, id);
-        user.ifPresent(value -> value.setFriends(getFriendsByUserId(id)));
-        return user;
+        return routing.readRow(Table.USERS, id, () -> {
+            Optional<User> user = findOne("user.findById", FIND_BY_ID_QUERY, id);
+            user.ifPresent(value -> value.setFriends(getFriendsByUserId(id)));
+            return user;
+        });
+    }
+
+    /**
+     * Проверки существования предшествуют записи, поэтому, как и запись, идут на основную БД.
+     */
+    @Override
+    public boolean existsById(Long id) {
+        return exists("user.exists", EXISTS_QUERY, id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        Set<Long> existing = new HashSet<>();
+        String name = "user.findExistingIds";
+        forEachChunk(new ArrayList<>(ids), (placeholders, params) -> existing.addAll(metrics.record(name, () ->
+                jdbc.queryForList(FIND_EXISTING_IDS_QUERY.formatted(placeholders), Long.class, params))));
+        return existing;
+    }
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids, boolean withFriends) {
+        return routing.readRows(Table.USERS, ids, () -> loadUsersByIds(ids, withFriends));
+    }
+
+    private List<User> loadUsersByIds(List<Long> ids, boolean withFriends) {
+        Map<Long, User> usersById = new HashMap<>();
+        String name = "user.findByIds";
+        forEachChunk(ids, (placeholders, params) -> {
+            for (User user : findMany(name, FIND_BY_IDS_QUERY.formatted(placeholders), params)) {
+                usersById.put(user.getId(), user);
+            }
+        });
+        if (withFriends) {
+            fillFriends(usersById);
+        }
+        return ids.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
+                .toList();
     }
 
     public Set<Long> getFriendsByUserId(Long userId) {
-        return new HashSet<>(jdbc.queryForList(FRIEND_QUERY, Long.class, userId));
+        return SortedLongSet.copyOf(metrics.record("user.friendIds", () -> jdbc.queryForList(FRIEND_QUERY, Long.class, userId)));
     }
 
     @Override
     public void addFriend(Long userId, Long friendId) {
         String confirmed = Status.CONFIRMED.name();
-        String updateSql2 = "MERGE INTO friends (user_id, friend_id, status) KEY (user_id, friend_id) VALUES (?, ?, ?)";
-        update(updateSql2, userId, friendId, confirmed);
+        update("user.mergeFriend", MERGE_FRIEND_QUERY, userId, friendId, confirmed);
+        friendGraph.addFriend(userId, friendId);
+        routing.written(Table.USERS, userId);
+    }
+
+    @Override
+    @Transactional
+    public void addFriends(Collection<Friendship> friendships) {
+        String confirmed = Status.CONFIRMED.name();
+        List<Object[]> rows = friendships.stream()
+                .map(friendship -> new Object[]{friendship.getUserId(), friendship.getFriendId(), confirmed})
+                .toList();
+        metrics.run("user.mergeFriend", () -> jdbc.batchUpdate(MERGE_FRIEND_QUERY, rows));
+        metrics.recordRows("user.mergeFriend", rows.size());
+        friendships.forEach(friendship -> friendGraph.addFriend(friendship.getUserId(), friendship.getFriendId()));
+        routing.written(Table.USERS, friendships.stream().map(Friendship::getUserId).collect(Collectors.toSet()));
     }
 
     @Override
     public void deleteFriend(Long userId, Long friendId) {
-        String sql = "DELETE FROM friends WHERE (user_id = ? AND friend_id = ?)";
-        jdbc.update(sql, userId, friendId);
+        delete("user.deleteFriend", DELETE_FRIEND_QUERY, userId, friendId);
+        friendGraph.removeFriend(userId, friendId);
+        routing.written(Table.USERS, userId);
+    }
+
+    /**
+     * Списки друзей самих друзей могут меняться независимо от userId, поэтому с ними чтение идет
+     * на реплику, только если в таблицу давно не писали. Без них с реплики читаются друзья, если ни сам userId,
+     * ни кто-то из друзей не менялся за max-lag.
+     */
+    @Override
+    public Collection<User> showFriends(Long userId, boolean withFriends) {
+        if (withFriends) {
+            return routing.readTable(Table.USERS, () -> findWithFriends("user.friendsWithFriends", FRIENDS_WITH_FRIENDS_QUERY, userId));
+        }
+        return routing.readRowWithRelated(Table.USERS, userId, friends -> friends.stream().map(User::getId).toList(),
+                () -> findMany("user.friends", FRIENDS_QUERY, userId));
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends) {
+        return showCommonFriends(List.of(userId, friendId), withFriends);
     }
 
+    /**
+     * Общие друзья считаются пересечением списков друзей в FriendGraph, пользователи загружаются пакетом.
+     */
     @Override
-    public Collection<User> showFriends(Long userId) {
-        List<Long> friendsId = jdbc.queryForList(FRIEND_QUERY, Long.class, userId);
-        return friendsId.stream()
-                .map(id -> findUserById(id)
-                        .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден")))
-                .collect(Collectors.toList());
+    public Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        return findUsersByIds(friendGraph.commonFriends(userIds), withFriends);
     }
 
     @Override
-    public Collection<User> showCommonFriends(Long userId, Long friendId) {
-        String sql = "SELECT f1.friend_id FROM friends f1 JOIN friends f2 ON f1.friend_id = f2.friend_id WHERE f1.user_id = ? AND f2.user_id = ? AND f1.status = 'CONFIRMED' AND f2.status = 'CONFIRMED'";
-        List<Long> commonFriends = jdbc.queryForList(sql, Long.class, userId, friendId);
-        return commonFriends.stream()
-                .map(id -> findUserById(id)
-                        .orElseThrow(() -> new NotFoundException("Пользователь с id " + id + " не найден")))
-                .collect(Collectors.toList());
+    public List<Long> findSuggestedFriendIds(Long userId, int count) {
+        return friendGraph.suggest(userId, count);
     }
 
+    /**
+     * Заполняет списки друзей пользователей одним запросом на каждые CHUNK_SIZE пользователей.
+     */
+    private void fillFriends(Map<Long, User> usersById) {
+        String name = "user.friendsOfUsers";
+        forEachChunk(new ArrayList<>(usersById.keySet()), (placeholders, params) -> metrics.run(name, () ->
+                jdbc.query(FRIENDS_OF_USERS_QUERY.formatted(placeholders), (rs) -> {
+                    usersById.get(rs.getLong("user_id")).getFriends().add(rs.getLong("friend_id"));
+                }, params)));
+    }
 
+    private List<User> findWithFriends(String name, String query, Object... params) {
+        List<User> users = metrics.record(name, () -> jdbc.query(query, withFriendsExtractor, params));
+        metrics.recordRows(name, users.size());
+        return users;
+    }
 }
@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.exceptions.InternalServerException;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Базы, по которым разложены user_likes и friends: строки пользователя лежат в шарде shardOf(user_id).
+ * Запросы ко всем шардам выполняются параллельно, по потоку на шард, и возвращают результаты в порядке шардов.
+ * Без шардирования база одна — основная, и запросы выполняются в вызывающем потоке.
+ */
+public class UserShards implements AutoCloseable {
+
+    private static final String SCHEMA_LOCATION = "classpath:db/shard";
+
+    private final List<JdbcTemplate> shards;
+    private final List<TransactionTemplate> transactions;
+    private final List<HikariDataSource> dataSources;
+    private final ExecutorService fanOut;
+
+    private UserShards(List<JdbcTemplate> shards, List<HikariDataSource> dataSources, ExecutorService fanOut) {
+        this.shards = List.copyOf(shards);
+        this.transactions = shards.stream()
+                .map(shard -> new TransactionTemplate(new DataSourceTransactionManager(Objects.requireNonNull(shard.getDataSource()))))
+                .toList();
+        this.dataSources = dataSources;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Единственный шард — основная БД со схемой из db/migration.
+     */
+    public static UserShards single(JdbcTemplate jdbc) {
+        return new UserShards(List.of(jdbc), List.of(), null);
+    }
+
+    /**
+     * Шарды по списку URL со схемой из db/shard. Порядок URL задает номера шардов и не должен меняться,
+     * как и их число: иначе строки окажутся не в том шарде, где их будут искать.
+     */
+    public static UserShards connect(List<String> urls, String username, String password, int poolSize) {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("Не задано ни одного шарда");
+        }
+        List<HikariDataSource> dataSources = new ArrayList<>(urls.size());
+        List<JdbcTemplate> shards = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource dataSource = new HikariDataSource();
+            dataSource.setJdbcUrl(urls.get(i));
+            dataSource.setUsername(username);
+            dataSource.setPassword(password);
+            dataSource.setPoolName("filmorate-shard-" + i);
+            dataSource.setMaximumPoolSize(poolSize);
+            dataSources.add(dataSource);
+            Flyway.configure().dataSource(dataSource).locations(SCHEMA_LOCATION).load().migrate();
+            shards.add(new JdbcTemplate(dataSource));
+        }
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService fanOut = Executors.newFixedThreadPool(urls.size() * poolSize, task -> {
+            Thread thread = new Thread(task, "shard-fan-out-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        return new UserShards(shards, dataSources, fanOut);
+    }
+
+    /**
+     * Лежат ли связи в отдельных от основной БД шардах.
+     */
+    public boolean isSharded() {
+        return fanOut != null;
+    }
+
+    public int count() {
+        return shards.size();
+    }
+
+    public int shardOf(long userId) {
+        return Math.floorMod(mix(userId), shards.size());
+    }
+
+    public JdbcTemplate shard(int index) {
+        return shards.get(index);
+    }
+
+    public JdbcTemplate shardFor(long userId) {
+        return shards.get(shardOf(userId));
+    }
+
+    /**
+     * Раскладывает элементы по шардам их пользователей; порядок элементов внутри шарда сохраняется.
+     */
+    public <T> Map<Integer, List<T>> partition(Collection<T> items, ToLongFunction<T> userId) {
+        Map<Integer, List<T>> byShard = new TreeMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardOf(userId.applyAsLong(item)), k -> new ArrayList<>()).add(item);
+        }
+        return byShard;
+    }
+
+    /**
+     * Выполняет запрос на всех шардах и возвращает результаты в порядке шардов.
+     */
+    public <R> List<R> scatter(Function<JdbcTemplate, R> query) {
+        List<R> results = new ArrayList<>(shards.size());
+        if (fanOut == null) {
+            shards.forEach(shard -> results.add(query.apply(shard)));
+            return results;
+        }
+        List<CompletableFuture<R>> futures = shards.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> query.apply(shard), fanOut))
+                .toList();
+        awaitAll(futures);
+        futures.forEach(future -> results.add(join(future)));
+        return results;
+    }
+
+    /**
+     * Выполняет action для каждого шарда из byShard с его частью элементов, шарды обрабатываются параллельно.
+     */
+    public <T> void forEachShard(Map<Integer, List<T>> byShard, BiConsumer<Integer, List<T>> action) {
+        if (fanOut == null) {
+            byShard.forEach(action);
+            return;
+        }
+        List<CompletableFuture<Void>> futures = byShard.entrySet().stream()
+                .map(entry -> CompletableFuture.runAsync(() -> action.accept(entry.getKey(), entry.getValue()), fanOut))
+                .toList();
+        awaitAll(futures);
+        futures.forEach(UserShards::join);
+    }
+
+    /**
+     * Выполняет action в локальной транзакции шарда. Транзакции разных шардов независимы.
+     */
+    public void inTransaction(int index, Runnable action) {
+        transactions.get(index).executeWithoutResult(status -> action.run());
+    }
+
+    @Override
+    public void close() {
+        if (fanOut != null) {
+            fanOut.shutdownNow();
+        }
+        dataSources.forEach(HikariDataSource::close);
+    }
+
+    /**
+     * Перемешивание битов id (финализатор MurmurHash3): соседние id попадают в разные шарды.
+     */
+    private static long mix(long id) {
+        id ^= id >>> 33;
+        id *= 0xff51afd7ed558ccdL;
+        id ^= id >>> 33;
+        id *= 0xc4ceb93fe53b1a85L;
+        id ^= id >>> 33;
+        return id;
+    }
+
+    /**
+     * Дожидается всех шардов, даже если какой-то завершился ошибкой: к моменту выхода ни один запрос уже не идет.
+     */
+    private static void awaitAll(List<? extends CompletableFuture<?>> futures) {
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+    }
+
+    /**
+     * Ждет результата и пробрасывает исключение запроса к шарду как есть, без CompletionException.
+     */
+    private static <R> R join(CompletableFuture<R> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new InternalServerException("Ошибка запроса к шарду: " + e.getCause());
+        }
+    }
+}
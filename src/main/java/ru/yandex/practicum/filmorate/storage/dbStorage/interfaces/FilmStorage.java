@@ -1,12 +1,45 @@
 package ru.yandex.practicum.filmorate.storage.dbStorage.interfaces;
 
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
 
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+/**
+ * Методы чтения с флагом withLikers: при false фильм отдается проекцией — likesCount берется из films.likes_count,
+ * а idOfUsersWhoLiked остается null и user_likes не читается. Перегрузки без флага возвращают фильмы с лайкнувшими.
+ */
 public interface FilmStorage {
-    Collection<Film> getAllFilms();
+    Collection<Film> getAllFilms(boolean withLikers);
+
+    default Collection<Film> getAllFilms() {
+        return getAllFilms(true);
+    }
+
+    /**
+     * Страница фильмов с id больше afterId в порядке возрастания id.
+     */
+    Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers);
+
+    default Collection<Film> getFilmsPage(long afterId, int limit) {
+        return getFilmsPage(afterId, limit, true);
+    }
+
+    /**
+     * Обходит все фильмы после afterId страницами по batchSize, не держа в памяти больше одной страницы.
+     */
+    default void forEachFilm(long afterId, int batchSize, boolean withLikers, Consumer<Film> action) {
+        Collection<Film> page;
+        do {
+            page = getFilmsPage(afterId, batchSize, withLikers);
+            for (Film film : page) {
+                action.accept(film);
+                afterId = film.getId();
+            }
+        } while (page.size() == batchSize);
+    }
 
     Film createFilm(Film film);
 
@@ -14,12 +47,102 @@ public interface FilmStorage {
 
     void deleteFilm(Long filmId);
 
-    Optional<Film> findFilmById(Long id);
+    Optional<Film> findFilmById(Long id, boolean withLikers);
+
+    default Optional<Film> findFilmById(Long id) {
+        return findFilmById(id, true);
+    }
+
+    boolean existsById(Long id);
+
+    boolean hasLike(Long filmId, Long userId);
+
+    /**
+     * Те из переданных id, для которых фильм существует.
+     */
+    default Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream().filter(this::existsById).collect(Collectors.toSet());
+    }
+
+    /**
+     * Те из переданных лайков, которые уже поставлены.
+     */
+    default Set<Like> findExistingLikes(Collection<Like> likes) {
+        return likes.stream()
+                .filter(like -> hasLike(like.getFilmId(), like.getUserId()))
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Фильмы с указанными id в том же порядке; отсутствующие id пропускаются.
+     */
+    List<Film> findFilmsByIds(List<Long> ids, boolean withLikers);
+
+    default List<Film> findFilmsByIds(List<Long> ids) {
+        return findFilmsByIds(ids, true);
+    }
 
      void addLike(Long filmId, Long userId);
 
+    /**
+     * Добавляет уже проверенные лайки одной операцией: либо все, либо ни одного.
+     */
+    default void addLikes(Collection<Like> likes) {
+        likes.forEach(like -> addLike(like.getFilmId(), like.getUserId()));
+    }
+
 
      void deleteLike(Long filmId, Long userId);
 
-     Collection<Film> showMostLikedFilms(int count);
+    /**
+     * Удаляет лайки одной операцией; отсутствующие лайки пропускаются.
+     */
+    default void deleteLikes(Collection<Like> likes) {
+        likes.stream()
+                .filter(like -> hasLike(like.getFilmId(), like.getUserId()))
+                .forEach(like -> deleteLike(like.getFilmId(), like.getUserId()));
+    }
+
+    default Collection<Film> showMostLikedFilms(int count, boolean withLikers) {
+        return findFilmsByIds(findMostLikedFilmIds(count), withLikers);
+    }
+
+    default Collection<Film> showMostLikedFilms(int count) {
+        return showMostLikedFilms(count, true);
+    }
+
+     List<Long> findMostLikedFilmIds(int count);
+
+    /**
+     * До count id фильмов, которые лайкнули пользователи с наибольшим числом общих с userId лайков,
+     * а сам userId — нет. Более весомые рекомендации идут первыми.
+     */
+    default List<Long> findRecommendedFilmIds(Long userId, int count) {
+        Collection<Film> films = getAllFilms();
+        Set<Long> liked = films.stream()
+                .filter(film -> film.getIdOfUsersWhoLiked().contains(userId))
+                .map(Film::getId)
+                .collect(Collectors.toSet());
+        Map<Long, Long> overlapByUserId = new HashMap<>();
+        for (Film film : films) {
+            if (liked.contains(film.getId())) {
+                film.getIdOfUsersWhoLiked().forEach(other -> overlapByUserId.merge(other, 1L, Long::sum));
+            }
+        }
+        overlapByUserId.remove(userId);
+        Map<Long, Long> scoreByFilmId = new HashMap<>();
+        for (Film film : films) {
+            if (!liked.contains(film.getId())) {
+                for (Long other : film.getIdOfUsersWhoLiked()) {
+                    scoreByFilmId.merge(film.getId(), overlapByUserId.getOrDefault(other, 0L), Long::sum);
+                }
+            }
+        }
+        return scoreByFilmId.entrySet().stream()
+                .filter(entry -> entry.getValue() > 0)
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(count)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
 }
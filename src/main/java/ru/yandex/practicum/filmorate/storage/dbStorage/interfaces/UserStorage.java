@@ -1,25 +1,117 @@
 package ru.yandex.practicum.filmorate.storage.dbStorage.interfaces;
 
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
 import ru.yandex.practicum.filmorate.model.userModel.User;
 
-import java.util.Collection;
-import java.util.Optional;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 public interface UserStorage {
     Collection<User> getAllUsers();
 
+    /**
+     * Страница пользователей с id больше afterId в порядке возрастания id.
+     */
+    Collection<User> getUsersPage(long afterId, int limit);
+
+    /**
+     * Обходит всех пользователей после afterId страницами по batchSize, не держа в памяти больше одной страницы.
+     */
+    default void forEachUser(long afterId, int batchSize, Consumer<User> action) {
+        Collection<User> page;
+        do {
+            page = getUsersPage(afterId, batchSize);
+            for (User user : page) {
+                action.accept(user);
+                afterId = user.getId();
+            }
+        } while (page.size() == batchSize);
+    }
+
     User createUser(User user);
 
     User updateUser(User user);
 
     Optional<User> findUserById(Long id);
 
+    boolean existsById(Long id);
+
+    /**
+     * Те из переданных id, для которых пользователь существует.
+     */
+    default Set<Long> findExistingIds(Collection<Long> ids) {
+        return ids.stream().filter(this::existsById).collect(Collectors.toSet());
+    }
+
+    /**
+     * Пользователи с переданными id в порядке ids; несуществующие пропускаются.
+     * Списки друзей заполняются, только если withFriends = true.
+     */
+    default List<User> findUsersByIds(List<Long> ids, boolean withFriends) {
+        return ids.stream()
+                .map(this::findUserById)
+                .flatMap(Optional::stream)
+                .map(user -> withFriends ? user
+                        : new User(user.getId(), user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()))
+                .toList();
+    }
+
     void addFriend(Long userId, Long friendId);
 
+    /**
+     * Добавляет уже проверенные дружбы одной операцией: либо все, либо ни одной.
+     */
+    default void addFriends(Collection<Friendship> friendships) {
+        friendships.forEach(friendship -> addFriend(friendship.getUserId(), friendship.getFriendId()));
+    }
+
     void deleteFriend(Long userId, Long friendId);
 
-    Collection<User> showFriends(Long userId);
+    /**
+     * Друзья пользователя. Списки друзей самих друзей заполняются, только если withFriends = true.
+     */
+    Collection<User> showFriends(Long userId, boolean withFriends);
+
+    default Collection<User> showFriends(Long userId) {
+        return showFriends(userId, false);
+    }
+
+    Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends);
+
+    default Collection<User> showCommonFriends(Long userId, Long friendId) {
+        return showCommonFriends(userId, friendId, false);
+    }
+
+    /**
+     * Общие друзья всех переданных пользователей по возрастанию id.
+     */
+    default Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        List<SortedLongSet> friends = userIds.stream()
+                .map(userId -> SortedLongSet.from(findUserById(userId).map(User::getFriends).orElse(Set.of())))
+                .toList();
+        return findUsersByIds(List.copyOf(SortedLongSet.intersection(friends)), withFriends);
+    }
 
-    Collection<User> showCommonFriends(Long userId, Long friendId);
+    /**
+     * До count id пользователей, которые есть в друзьях у друзей userId, но не у него самого.
+     * Кандидаты с большим числом общих друзей идут первыми, при равенстве — по возрастанию id.
+     */
+    default List<Long> findSuggestedFriendIds(Long userId, int count) {
+        Set<Long> friends = findUserById(userId).map(User::getFriends).orElse(Set.of());
+        Map<Long, Long> mutualByUserId = new HashMap<>();
+        for (Long friendId : friends) {
+            findUserById(friendId).ifPresent(friend ->
+                    friend.getFriends().forEach(other -> mutualByUserId.merge(other, 1L, Long::sum)));
+        }
+        mutualByUserId.remove(userId);
+        mutualByUserId.keySet().removeAll(friends);
+        return mutualByUserId.entrySet().stream()
+                .sorted(Map.Entry.<Long, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(Math.max(count, 0))
+                .map(Map.Entry::getKey)
+                .toList();
+    }
 
 }
@@ -25,6 +25,7 @@ public class FilmRowMapper implements RowMapper<Film> {
         int ratingId = rs.getInt("mpa_id");
         String ratingName = rs.getString("rating");
         film.setRating(new Rating(ratingId, ratingName));
+        film.setLikesCount(rs.getLong("likes_count"));
         return film;
     }
 }
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.storage.dbStorage.mappers;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Собирает пользователей из выборки users LEFT JOIN friends, упорядоченной по user_id:
+ * строки одного пользователя идут подряд, id его друзей лежат в колонке friend_of_friend_id.
+ */
+@Component("userWithFriendsExtractor")
+public class UserWithFriendsExtractor implements ResultSetExtractor<List<User>> {
+
+    private final UserRowMapper userRowMapper;
+
+    public UserWithFriendsExtractor(UserRowMapper userRowMapper) {
+        this.userRowMapper = userRowMapper;
+    }
+
+    @Override
+    public List<User> extractData(ResultSet rs) throws SQLException {
+        List<User> users = new ArrayList<>();
+        User current = null;
+        int rowNum = 0;
+        while (rs.next()) {
+            long userId = rs.getLong("user_id");
+            if (current == null || current.getId() != userId) {
+                current = userRowMapper.mapRow(rs, rowNum++);
+                users.add(current);
+            }
+            long friendId = rs.getLong("friend_of_friend_id");
+            if (!rs.wasNull()) {
+                current.getFriends().add(friendId);
+            }
+        }
+        return users;
+    }
+}
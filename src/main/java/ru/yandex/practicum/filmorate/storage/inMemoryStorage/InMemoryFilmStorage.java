@@ -1,57 +1,233 @@
 package ru.yandex.practicum.filmorate.storage.inMemoryStorage;
 
-import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 
-@Component("userInMemoryStorage")
+/**
+ * Потокобезопасное хранилище фильмов в памяти. Наружу отдаются только копии, поэтому
+ * сериализация фильма не пересекается с параллельным изменением его лайков.
+ * Лайки фильма хранятся в SortedLongSet и читаются и меняются под блокировкой полосы фильма
+ * вместе с его местом в рейтинге; список фильмов и рейтинг читаются без блокировок.
+ */
 public class InMemoryFilmStorage implements FilmStorage {
 
-    private final Map<Long, Film> films = new HashMap<>();
+    private static final int STRIPES = 64;
+    private static final Comparator<Rank> ORDER = Comparator.comparingLong(Rank::likes).reversed()
+            .thenComparingLong(Rank::filmId);
+
+    private final ReferenceDataRegistry referenceData;
+    private final CatalogVersions versions;
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, Film> films = new ConcurrentSkipListMap<>();
+    private final Map<Long, SortedLongSet> likesByFilmId = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Rank> ranking = new ConcurrentSkipListSet<>(ORDER);
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public InMemoryFilmStorage(ReferenceDataRegistry referenceData, CatalogVersions versions) {
+        this.referenceData = referenceData;
+        this.versions = versions;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Collection<Film> getAllFilms(boolean withLikers) {
+        return films.values().stream()
+                .map(film -> copy(film, withLikers))
+                .toList();
+    }
 
     @Override
-    public Collection<Film> getAllFilms() {
-        return films.values();
+    public Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers) {
+        return films.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(film -> copy(film, withLikers))
+                .toList();
     }
 
     @Override
     public Film createFilm(Film film) {
-        films.put(film.getId(), film);
+        long id = ids.incrementAndGet();
+        film.setId(id);
+        ReentrantLock lock = stripe(id);
+        lock.lock();
+        try {
+            likesByFilmId.put(id, new SortedLongSet());
+            films.put(id, resolve(film));
+            ranking.add(new Rank(0, id));
+        } finally {
+            lock.unlock();
+        }
+        versions.filmChanged(id);
         return film;
     }
 
     @Override
     public Film updateFilm(Film film) {
-        films.put(film.getId(), film);
-        return film;
+        Film stored = films.computeIfPresent(film.getId(), (id, current) -> resolve(film));
+        if (stored == null) {
+            throw new NotFoundException("Фильм с таким id не найден");
+        }
+        versions.filmChanged(film.getId());
+        return copy(stored, false);
     }
 
     @Override
     public void deleteFilm(Long filmId) {
-        films.remove(filmId);
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            if (films.remove(filmId) != null) {
+                SortedLongSet likes = likesByFilmId.remove(filmId);
+                ranking.remove(new Rank(likes.size(), filmId));
+                versions.filmChanged(filmId);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
-    public Optional<Film> findFilmById(Long id) {
-        return Optional.ofNullable(films.get(id));
+    public Optional<Film> findFilmById(Long id, boolean withLikers) {
+        return Optional.ofNullable(films.get(id)).map(film -> copy(film, withLikers));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return films.containsKey(id);
+    }
+
+    @Override
+    public boolean hasLike(Long filmId, Long userId) {
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            SortedLongSet likes = likesByFilmId.get(filmId);
+            return likes != null && likes.contains(userId.longValue());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids, boolean withLikers) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .map(film -> copy(film, withLikers))
+                .toList();
     }
 
     @Override
     public void addLike(Long filmId, Long userId) {
-        films.get(filmId).getIdOfUsersWhoLiked().add(userId);
+        changeLike(filmId, userId, true);
+    }
+
+    @Override
+    public void addLikes(Collection<Like> likes) {
+        likes.forEach(like -> changeLike(like.getFilmId(), like.getUserId(), true));
     }
 
     @Override
     public void deleteLike(Long filmId, Long userId) {
-        films.get(filmId).getIdOfUsersWhoLiked().remove(userId);
+        changeLike(filmId, userId, false);
     }
 
     @Override
-    public Collection<Film> showMostLikedFilms(int count) {
-        return films.values().stream().sorted(Comparator.comparingInt(f -> -f.getIdOfUsersWhoLiked().size()))
-                .limit(count)
-                .toList();
+    public void deleteLikes(Collection<Like> likes) {
+        likes.stream()
+                .filter(like -> existsById(like.getFilmId()))
+                .forEach(like -> changeLike(like.getFilmId(), like.getUserId(), false));
+    }
+
+    /**
+     * При смене числа лайков новая позиция фильма добавляется раньше, чем удаляется старая,
+     * поэтому читатель может встретить фильм дважды, но не пропустит его. Повторы отбрасываются.
+     */
+    @Override
+    public List<Long> findMostLikedFilmIds(int count) {
+        Set<Long> top = new LinkedHashSet<>();
+        Iterator<Rank> iterator = ranking.iterator();
+        while (top.size() < count && iterator.hasNext()) {
+            top.add(iterator.next().filmId());
+        }
+        return new ArrayList<>(top);
+    }
+
+    private void changeLike(long filmId, long userId, boolean add) {
+        ReentrantLock lock = stripe(filmId);
+        lock.lock();
+        try {
+            SortedLongSet likes = likesByFilmId.get(filmId);
+            if (likes == null) {
+                throw new NotFoundException("Фильм с таким id не найден");
+            }
+            int before = likes.size();
+            if (add ? likes.add(userId) : likes.remove(userId)) {
+                ranking.add(new Rank(likes.size(), filmId));
+                ranking.remove(new Rank(before, filmId));
+                versions.filmChanged(filmId);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(long filmId) {
+        return stripes[(int) (filmId & (STRIPES - 1))];
+    }
+
+    /**
+     * Сохраняемая копия фильма: названия жанров и рейтинга берутся из справочников, жанры упорядочены по id, как в БД.
+     */
+    private Film resolve(Film film) {
+        Rating rating = film.getRating() == null ? null
+                : referenceData.findRating(film.getRating().getId()).orElse(film.getRating());
+        Film stored = new Film(film.getId(), film.getName(), film.getDescription(), film.getReleaseDate(),
+                film.getDuration(), rating);
+        stored.setGenres(film.getGenres() == null ? new LinkedHashSet<>() : film.getGenres().stream()
+                .sorted(Comparator.comparingInt(Genre::getId))
+                .map(genre -> referenceData.findGenre(genre.getId()).orElse(genre))
+                .collect(Collectors.toCollection(LinkedHashSet::new)));
+        return stored;
+    }
+
+    private Film copy(Film stored, boolean withLikers) {
+        Film film = new Film(stored.getId(), stored.getName(), stored.getDescription(), stored.getReleaseDate(),
+                stored.getDuration(), stored.getRating());
+        film.setGenres(new LinkedHashSet<>(stored.getGenres()));
+        ReentrantLock lock = stripe(stored.getId());
+        lock.lock();
+        try {
+            SortedLongSet likes = likesByFilmId.get(stored.getId());
+            film.setLikesCount(likes == null ? 0 : likes.size());
+            if (withLikers) {
+                film.setIdOfUsersWhoLiked(likes == null ? new SortedLongSet() : likes);
+            } else {
+                film.setIdOfUsersWhoLiked(null);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return film;
+    }
+
+    private record Rank(long likes, long filmId) {
     }
 }
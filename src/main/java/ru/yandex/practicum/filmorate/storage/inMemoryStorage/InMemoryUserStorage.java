@@ -1,72 +1,165 @@
 package ru.yandex.practicum.filmorate.storage.inMemoryStorage;
 
-import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
 import ru.yandex.practicum.filmorate.model.userModel.User;
 import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
-@Component("inMemoryUserStorage")
+/**
+ * Потокобезопасное хранилище пользователей в памяти. Дружба односторонняя, как в friends:
+ * addFriend(userId, friendId) добавляет friendId в друзья userId, но не наоборот.
+ * Друзья пользователя хранятся в SortedLongSet под блокировкой полосы пользователя; наружу отдаются только копии.
+ */
 public class InMemoryUserStorage implements UserStorage {
 
-    private final Map<Long, User> users = new HashMap<>();
+    private static final int STRIPES = 64;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, User> users = new ConcurrentSkipListMap<>();
+    private final Map<Long, SortedLongSet> friendsByUserId = new ConcurrentHashMap<>();
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    public InMemoryUserStorage() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
 
     @Override
     public Collection<User> getAllUsers() {
-        return users.values();
+        return users.values().stream()
+                .map(user -> copy(user, true))
+                .toList();
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        return users.tailMap(afterId, false).values().stream()
+                .limit(limit)
+                .map(user -> copy(user, true))
+                .toList();
     }
 
     @Override
     public User createUser(User user) {
-        users.put(user.getId(), user);
+        long id = ids.incrementAndGet();
+        user.setId(id);
+        friendsByUserId.put(id, new SortedLongSet());
+        users.put(id, new User(id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()));
         return user;
     }
 
     @Override
     public User updateUser(User user) {
-        users.put(user.getId(), user);
+        User stored = users.computeIfPresent(user.getId(), (id, current) ->
+                new User(id, user.getEmail(), user.getLogin(), user.getName(), user.getBirthday()));
+        if (stored == null) {
+            throw new NotFoundException("Пользователь не найден");
+        }
         return user;
     }
 
     @Override
     public Optional<User> findUserById(Long id) {
-        return Optional.ofNullable(users.get(id));
+        return Optional.ofNullable(users.get(id)).map(user -> copy(user, true));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return users.containsKey(id);
+    }
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids, boolean withFriends) {
+        return toUsers(ids, withFriends);
     }
 
     @Override
     public void addFriend(Long userId, Long friendId) {
-        User user = findUserById(userId).get();
-        User friend = findUserById(friendId).get();
-        user.getFriends().add(friendId);
-        friend.getFriends().add(userId);
+        if (!users.containsKey(friendId)) {
+            throw new NotFoundException("Пользователь не найден");
+        }
+        changeFriends(userId, friends -> friends.add(friendId.longValue()));
     }
 
     @Override
     public void deleteFriend(Long userId, Long friendId) {
-        User user = findUserById(userId).get();
-        User friend = findUserById(friendId).get();
-        user.getFriends().remove(friendId);
-        friend.getFriends().remove(userId);
+        changeFriends(userId, friends -> friends.remove(friendId.longValue()));
     }
 
     @Override
-    public Collection<User> showFriends(Long userId) {
-        User user = findUserById(userId).get();
-        List<User> friends = new ArrayList<>();
-        friends.add(user);
-        return friends;
+    public Collection<User> showFriends(Long userId, boolean withFriends) {
+        return toUsers(friendsOf(userId), withFriends);
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends) {
+        return showCommonFriends(List.of(userId, friendId), withFriends);
     }
 
     @Override
-    public Collection<User> showCommonFriends(Long userId, Long friendId) {
-        User user = findUserById(userId).get();
-        User friend = findUserById(friendId).get();
-        Set<User> commonFriends = new HashSet<>();
-        for (Long usersId : user.getFriends()) {
-            if (friend.getFriends().contains(usersId)) {
-                commonFriends.add(findUserById(usersId).get());
-            }
+    public Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        List<SortedLongSet> friends = userIds.stream()
+                .map(this::friendsOf)
+                .toList();
+        return toUsers(SortedLongSet.intersection(friends), withFriends);
+    }
+
+    /**
+     * Копия множества друзей, снятая под блокировкой полосы пользователя.
+     */
+    private SortedLongSet friendsOf(Long userId) {
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            return existingFriends(userId).copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void changeFriends(Long userId, Consumer<SortedLongSet> change) {
+        ReentrantLock lock = stripe(userId);
+        lock.lock();
+        try {
+            change.accept(existingFriends(userId));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private SortedLongSet existingFriends(Long userId) {
+        SortedLongSet friends = friendsByUserId.get(userId);
+        if (friends == null) {
+            throw new NotFoundException("Пользователь не найден");
         }
-        return commonFriends;
+        return friends;
+    }
+
+    private ReentrantLock stripe(long userId) {
+        return stripes[(int) (userId & (STRIPES - 1))];
+    }
+
+    private List<User> toUsers(Collection<Long> ids, boolean withFriends) {
+        return ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(user -> copy(user, withFriends))
+                .toList();
+    }
+
+    private User copy(User stored, boolean withFriends) {
+        User user = new User(stored.getId(), stored.getEmail(), stored.getLogin(), stored.getName(), stored.getBirthday());
+        if (withFriends) {
+            user.setFriends(friendsOf(stored.getId()));
+        }
+        return user;
     }
 }
@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Версии фильмов для ETag и Last-Modified. Хранилища фильмов отмечают здесь каждое изменение фильма
+ * и его лайков, а версия всего каталога равна последнему такому изменению.
+ * Версия меняется после завершения транзакции, поэтому читатель не получит новый ETag вместе со старыми данными.
+ * Фильм, не менявшийся с запуска, имеет общую начальную версию; в ETag входит время запуска,
+ * так что ETag, выданные до перезапуска, не совпадут. Версии живут в памяти процесса и верны только
+ * при одном экземпляре приложения: записи другого экземпляра здесь не отмечаются.
+ */
+@Component
+public class CatalogVersions {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicLong counter = new AtomicLong();
+    private final Map<Long, Stamp> filmStamps = new ConcurrentHashMap<>();
+    private final AtomicReference<Stamp> catalog = new AtomicReference<>();
+    private volatile Stamp floor;
+
+    public CatalogVersions() {
+        floor = next();
+        catalog.set(floor);
+    }
+
+    public Version films() {
+        return catalog.get().toVersion(epoch);
+    }
+
+    public Version film(long filmId) {
+        Stamp stamp = filmStamps.get(filmId);
+        Stamp current = floor;
+        return (stamp == null || stamp.number() < current.number() ? current : stamp).toVersion(epoch);
+    }
+
+    public void filmChanged(long filmId) {
+        TransactionHooks.afterCompletion(() -> stamp(filmId));
+    }
+
+    public void filmsChanged(Collection<Long> filmIds) {
+        TransactionHooks.afterCompletion(() -> filmIds.forEach(this::stamp));
+    }
+
+    /**
+     * Меняет версии всех фильмов сразу, например, после исправления счетчиков лайков в БД в обход хранилища.
+     */
+    public void allFilmsChanged() {
+        TransactionHooks.afterCompletion(() -> {
+            Stamp stamp = next();
+            floor = stamp;
+            catalog.accumulateAndGet(stamp, CatalogVersions::latest);
+        });
+    }
+
+    private void stamp(long filmId) {
+        Stamp stamp = next();
+        filmStamps.merge(filmId, stamp, CatalogVersions::latest);
+        catalog.accumulateAndGet(stamp, CatalogVersions::latest);
+    }
+
+    private Stamp next() {
+        return new Stamp(counter.incrementAndGet(), System.currentTimeMillis());
+    }
+
+    private static Stamp latest(Stamp a, Stamp b) {
+        return a.number() >= b.number() ? a : b;
+    }
+
+    private record Stamp(long number, long changedAt) {
+        Version toVersion(String epoch) {
+            return new Version("\"" + epoch + "-" + number + "\"", changedAt);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+
+import java.util.*;
+
+/**
+ * Рейтинг фильмов по количеству лайков, который хранится в памяти.
+ * Собирается из films.likes_count при старте и дальше поддерживается инкрементально
+ * из FilmDbStorage, поэтому /films/popular не пересчитывает агрегат в БД.
+ * Если до фиксации изменения рейтинг пересобрали, неясно, увидела ли пересборка изменение,
+ * поэтому после фиксации счетчик такого фильма не меняется повторно, а перечитывается из БД.
+ */
+@Slf4j
+@Component
+public class FilmLeaderboard extends InMemoryIndex {
+
+    private static final String LOAD_QUERY = "SELECT film_id, likes_count FROM films";
+    private static final String LOAD_FILM_QUERY = "SELECT likes_count FROM films WHERE film_id = ?";
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private final JdbcTemplate jdbc;
+    private final Map<Long, Long> likesByFilmId = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(ORDER);
+
+    public FilmLeaderboard(JdbcTemplate jdbc) {
+        super(UserShards.single(jdbc));
+        this.jdbc = jdbc;
+    }
+
+    public List<Long> top(int count) {
+        return read(() -> {
+            List<Long> result = new ArrayList<>(Math.min(Math.max(count, 0), ranking.size()));
+            Iterator<Entry> iterator = ranking.iterator();
+            while (result.size() < count && iterator.hasNext()) {
+                result.add(iterator.next().filmId());
+            }
+            return result;
+        });
+    }
+
+    public void addFilm(long filmId) {
+        apply(filmId, () -> {
+            if (!likesByFilmId.containsKey(filmId)) {
+                likesByFilmId.put(filmId, 0L);
+                ranking.add(new Entry(filmId, 0));
+            }
+        });
+    }
+
+    public void removeFilm(long filmId) {
+        apply(filmId, () -> remove(filmId));
+    }
+
+    public void changeLikes(long filmId, int delta) {
+        apply(filmId, () -> put(filmId, Math.max(0, likesByFilmId.getOrDefault(filmId, 0L) + delta)));
+    }
+
+    @Override
+    protected void load() {
+        likesByFilmId.clear();
+        ranking.clear();
+        loadRows(LOAD_QUERY, rs -> {
+            long filmId = rs.getLong("film_id");
+            long likes = rs.getLong("likes_count");
+            likesByFilmId.put(filmId, likes);
+            ranking.add(new Entry(filmId, likes));
+        });
+        log.info("Рейтинг популярных фильмов загружен, фильмов: {}", likesByFilmId.size());
+    }
+
+    private void apply(long filmId, Runnable change) {
+        apply(change, () -> refresh(filmId));
+    }
+
+    private void refresh(long filmId) {
+        List<Long> likes = jdbc.queryForList(LOAD_FILM_QUERY, Long.class, filmId);
+        if (likes.isEmpty()) {
+            remove(filmId);
+        } else {
+            put(filmId, likes.get(0));
+        }
+    }
+
+    private void put(long filmId, long likes) {
+        remove(filmId);
+        likesByFilmId.put(filmId, likes);
+        ranking.add(new Entry(filmId, likes));
+    }
+
+    private void remove(long filmId) {
+        Long likes = likesByFilmId.remove(filmId);
+        if (likes != null) {
+            ranking.remove(new Entry(filmId, likes));
+        }
+    }
+
+    private record Entry(long filmId, long likes) {
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Граф дружбы в памяти: друзья каждого пользователя в SortedLongSet.
+ * Собирается из friends всех шардов при старте и поддерживается из хранилища пользователей при добавлении и удалении друзей.
+ * По нему подбираются возможные друзья и общие друзья без самосоединений friends в БД.
+ */
+@Slf4j
+@Component
+public class FriendGraph extends InMemoryIndex {
+
+    private static final String LOAD_QUERY = "SELECT user_id, friend_id FROM friends WHERE status = 'CONFIRMED' ORDER BY user_id, friend_id";
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final Comparator<Score> ORDER = Comparator.comparingLong(Score::score).reversed()
+            .thenComparingLong(Score::id);
+
+    private final int maxEdges;
+    private final Map<Long, SortedLongSet> friendsByUser = new HashMap<>();
+
+    @Autowired
+    public FriendGraph(UserShards shards, @Value("${filmorate.suggestions.max-edges:100000}") int maxEdges) {
+        super(shards);
+        this.maxEdges = maxEdges;
+    }
+
+    public FriendGraph(JdbcTemplate jdbc, int maxEdges) {
+        this(UserShards.single(jdbc), maxEdges);
+    }
+
+    /**
+     * До count пользователей, которые есть в друзьях у друзей userId, но не у него самого,
+     * по убыванию числа общих друзей. Для пользователя с большим числом связей обходятся
+     * только друзья с наименьшим числом друзей, пока суммарно не наберется maxEdges связей.
+     */
+    public List<Long> suggest(long userId, int count) {
+        return read(() -> {
+            SortedLongSet friends = friendsByUser.get(userId);
+            if (friends == null || friends.isEmpty() || count <= 0) {
+                return List.of();
+            }
+            long[] occurrences = friendsOfFriends(friends);
+            PriorityQueue<Score> top = new PriorityQueue<>(ORDER.reversed());
+            int start = 0;
+            while (start < occurrences.length) {
+                int end = start;
+                while (end < occurrences.length && occurrences[end] == occurrences[start]) {
+                    end++;
+                }
+                long candidate = occurrences[start];
+                if (candidate != userId && !friends.contains(candidate)) {
+                    top.add(new Score(candidate, end - start));
+                    if (top.size() > count) {
+                        top.poll();
+                    }
+                }
+                start = end;
+            }
+            return top.stream()
+                    .sorted(ORDER)
+                    .map(Score::id)
+                    .toList();
+        });
+    }
+
+    /**
+     * Id общих друзей всех переданных пользователей по возрастанию.
+     */
+    public List<Long> commonFriends(Collection<Long> userIds) {
+        return read(() -> {
+            List<SortedLongSet> friends = new ArrayList<>(userIds.size());
+            for (Long userId : userIds) {
+                SortedLongSet userFriends = friendsByUser.get(userId);
+                if (userFriends == null || userFriends.isEmpty()) {
+                    return List.of();
+                }
+                friends.add(userFriends);
+            }
+            return List.copyOf(SortedLongSet.intersection(friends));
+        });
+    }
+
+    public void addFriend(long userId, long friendId) {
+        apply(() -> friendsByUser.computeIfAbsent(userId, k -> new SortedLongSet()).add(friendId));
+    }
+
+    public void removeFriend(long userId, long friendId) {
+        apply(() -> {
+            SortedLongSet friends = friendsByUser.get(userId);
+            if (friends != null) {
+                friends.remove(friendId);
+            }
+        });
+    }
+
+    @Override
+    protected void load() {
+        friendsByUser.clear();
+        loadRows(LOAD_QUERY, rs -> {
+            friendsByUser.computeIfAbsent(rs.getLong("user_id"), k -> new SortedLongSet()).add(rs.getLong("friend_id"));
+        });
+        friendsByUser.values().forEach(SortedLongSet::trimToSize);
+        log.info("Граф дружбы загружен, пользователей с друзьями: {}", friendsByUser.size());
+    }
+
+    /**
+     * Друзья всех друзей в одном отсортированном массиве: длина серии одинаковых id равна числу общих друзей.
+     * Друзья берутся по возрастанию числа их друзей в пределах maxEdges; для больших окрестностей
+     * сбор и сортировка идут параллельно.
+     */
+    private long[] friendsOfFriends(SortedLongSet friends) {
+        SortedLongSet[] adjacency = new SortedLongSet[friends.size()];
+        int size = 0;
+        for (int i = 0; i < friends.size(); i++) {
+            SortedLongSet friendsOfFriend = friendsByUser.get(friends.get(i));
+            if (friendsOfFriend != null && !friendsOfFriend.isEmpty()) {
+                adjacency[size++] = friendsOfFriend;
+            }
+        }
+        Arrays.sort(adjacency, 0, size, Comparator.comparingInt(SortedLongSet::size));
+        int[] offsets = new int[size + 1];
+        int used = 0;
+        while (used < size && offsets[used] + adjacency[used].size() <= maxEdges) {
+            offsets[used + 1] = offsets[used] + adjacency[used].size();
+            used++;
+        }
+        if (used < size) {
+            log.debug("Подбор друзей ограничен {} из {} друзей", used, size);
+        }
+        long[] occurrences = new long[offsets[used]];
+        IntStream indexes = IntStream.range(0, used);
+        if (occurrences.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> adjacency[i].copyTo(occurrences, offsets[i]));
+        if (occurrences.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(occurrences);
+        } else {
+            Arrays.sort(occurrences);
+        }
+        return occurrences;
+    }
+
+    private record Score(long id, long score) {
+    }
+}
@@ -0,0 +1,107 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Индекс в памяти, который собирается из БД при старте и дальше поддерживается хранилищами.
+ * Изменение попадает в индекс сразу, до фиксации транзакции. Пересборка читает только зафиксированные строки,
+ * поэтому если индекс пересобрали до фиксации, после нее изменение применяется повторно.
+ * Откат транзакции, изменившей индекс, помечает его устаревшим, и следующее чтение пересобирает его.
+ */
+public abstract class InMemoryIndex {
+
+    private final UserShards shards;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long generation;
+    private volatile boolean stale = true;
+
+    protected InMemoryIndex(UserShards shards) {
+        this.shards = shards;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        rebuild();
+    }
+
+    public void markStale() {
+        stale = true;
+    }
+
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            generation++;
+            load();
+            stale = false;
+            TransactionHooks.onRollback(this::markStale);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Очищает индекс и заполняет его заново, обычно через loadRows. Вызывается под блокировкой записи.
+     */
+    protected abstract void load();
+
+    /**
+     * Выполняет query на всех шардах по очереди, так что rows не вызывается параллельно.
+     */
+    protected void loadRows(String query, RowCallbackHandler rows) {
+        for (int shard = 0; shard < shards.count(); shard++) {
+            shards.shard(shard).query(query, rows);
+        }
+    }
+
+    protected <R> R read(Supplier<R> query) {
+        if (stale) {
+            rebuild();
+        }
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Применяет изменение и, если до фиксации транзакции индекс пересобрали, применяет его еще раз:
+     * пересборка могла не увидеть незафиксированную строку. Изменение должно переживать повтор.
+     */
+    protected void apply(Runnable change) {
+        apply(change, change);
+    }
+
+    /**
+     * Как apply(change), но после пересборки вместо повтора выполняется refresh, например перечитывание строки из БД.
+     * Оба выполняются под блокировкой записи, так что refresh разных транзакций идут в порядке фиксаций.
+     */
+    protected void apply(Runnable change, Runnable refresh) {
+        long applied;
+        lock.writeLock().lock();
+        try {
+            change.run();
+            applied = generation;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        TransactionHooks.onCompletion(() -> {
+            lock.writeLock().lock();
+            try {
+                if (generation != applied) {
+                    refresh.run();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }, this::markStale);
+    }
+}
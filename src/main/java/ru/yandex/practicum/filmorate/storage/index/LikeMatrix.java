@@ -0,0 +1,165 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Матрица лайков в памяти: фильмы каждого пользователя и пользователи каждого фильма в SortedLongSet.
+ * Собирается из user_likes всех шардов при старте и поддерживается из хранилища фильмов при добавлении и удалении лайков.
+ * По ней строятся рекомендации без обращения к БД.
+ */
+@Slf4j
+@Component
+public class LikeMatrix extends InMemoryIndex {
+
+    private static final String LOAD_QUERY = "SELECT user_id, film_id FROM user_likes";
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final Comparator<Score> ORDER = Comparator.comparingLong(Score::score).reversed()
+            .thenComparingLong(Score::id);
+
+    private final int neighbours;
+    private final Map<Long, SortedLongSet> filmsByUser = new HashMap<>();
+    private final Map<Long, SortedLongSet> usersByFilm = new HashMap<>();
+
+    @Autowired
+    public LikeMatrix(UserShards shards, @Value("${filmorate.recommendations.neighbours:20}") int neighbours) {
+        super(shards);
+        this.neighbours = neighbours;
+    }
+
+    public LikeMatrix(JdbcTemplate jdbc, int neighbours) {
+        this(UserShards.single(jdbc), neighbours);
+    }
+
+    /**
+     * До count фильмов, которые лайкнули пользователи с наибольшим числом общих лайков, а сам пользователь — нет.
+     * Вес фильма — сумма числа общих лайков у соседей, которые его лайкнули.
+     */
+    public List<Long> recommend(long userId, int count) {
+        return read(() -> {
+            SortedLongSet liked = filmsByUser.get(userId);
+            if (liked == null || liked.isEmpty() || count <= 0) {
+                return List.of();
+            }
+            List<Score> nearest = findNeighbours(userId, liked);
+            Map<Long, Long> scoreByFilmId = new HashMap<>();
+            for (Score neighbour : nearest) {
+                filmsByUser.get(neighbour.id()).forEachLong(filmId -> {
+                    if (!liked.contains(filmId)) {
+                        scoreByFilmId.merge(filmId, neighbour.score(), Long::sum);
+                    }
+                });
+            }
+            return scoreByFilmId.entrySet().stream()
+                    .map(entry -> new Score(entry.getKey(), entry.getValue()))
+                    .sorted(ORDER)
+                    .limit(count)
+                    .map(Score::id)
+                    .toList();
+        });
+    }
+
+    public boolean hasLike(long filmId, long userId) {
+        return read(() -> {
+            SortedLongSet films = filmsByUser.get(userId);
+            return films != null && films.contains(filmId);
+        });
+    }
+
+    public void addLike(long filmId, long userId) {
+        apply(() -> {
+            filmsByUser.computeIfAbsent(userId, k -> new SortedLongSet()).add(filmId);
+            usersByFilm.computeIfAbsent(filmId, k -> new SortedLongSet()).add(userId);
+        });
+    }
+
+    public void removeLike(long filmId, long userId) {
+        apply(() -> {
+            SortedLongSet films = filmsByUser.get(userId);
+            if (films != null) {
+                films.remove(filmId);
+            }
+            SortedLongSet users = usersByFilm.get(filmId);
+            if (users != null) {
+                users.remove(userId);
+            }
+        });
+    }
+
+    public void removeFilm(long filmId) {
+        apply(() -> {
+            SortedLongSet users = usersByFilm.remove(filmId);
+            if (users != null) {
+                users.forEachLong(userId -> filmsByUser.get(userId).remove(filmId));
+            }
+        });
+    }
+
+    @Override
+    protected void load() {
+        filmsByUser.clear();
+        usersByFilm.clear();
+        loadRows(LOAD_QUERY, rs -> {
+            long userId = rs.getLong("user_id");
+            long filmId = rs.getLong("film_id");
+            filmsByUser.computeIfAbsent(userId, k -> new SortedLongSet()).add(filmId);
+            usersByFilm.computeIfAbsent(filmId, k -> new SortedLongSet()).add(userId);
+        });
+        filmsByUser.values().forEach(SortedLongSet::trimToSize);
+        usersByFilm.values().forEach(SortedLongSet::trimToSize);
+        log.info("Матрица лайков загружена, пользователей: {}, фильмов: {}", filmsByUser.size(), usersByFilm.size());
+    }
+
+    /**
+     * Соседи с наибольшим числом общих лайков. Все, кто лайкнул те же фильмы, собираются в один массив;
+     * после сортировки длина серии одинаковых id равна числу общих лайков. Для больших окрестностей
+     * сбор и сортировка идут параллельно.
+     */
+    private List<Score> findNeighbours(long userId, SortedLongSet liked) {
+        SortedLongSet[] coLikers = new SortedLongSet[liked.size()];
+        int[] offsets = new int[liked.size() + 1];
+        for (int i = 0; i < liked.size(); i++) {
+            coLikers[i] = usersByFilm.get(liked.get(i));
+            offsets[i + 1] = offsets[i] + coLikers[i].size();
+        }
+        long[] occurrences = new long[offsets[liked.size()]];
+        IntStream indexes = IntStream.range(0, coLikers.length);
+        if (occurrences.length >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> coLikers[i].copyTo(occurrences, offsets[i]));
+        if (occurrences.length >= PARALLEL_THRESHOLD) {
+            Arrays.parallelSort(occurrences);
+        } else {
+            Arrays.sort(occurrences);
+        }
+
+        PriorityQueue<Score> nearest = new PriorityQueue<>(ORDER.reversed());
+        int start = 0;
+        while (start < occurrences.length) {
+            int end = start;
+            while (end < occurrences.length && occurrences[end] == occurrences[start]) {
+                end++;
+            }
+            if (occurrences[start] != userId) {
+                nearest.add(new Score(occurrences[start], end - start));
+                if (nearest.size() > neighbours) {
+                    nearest.poll();
+                }
+            }
+            start = end;
+        }
+        return new ArrayList<>(nearest);
+    }
+
+    private record Score(long id, long score) {
+    }
+}
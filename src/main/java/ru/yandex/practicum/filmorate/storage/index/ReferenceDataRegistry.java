@@ -0,0 +1,100 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.GenreStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.RatingStorage;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Справочники жанров и рейтингов MPA, загруженные в память.
+ * Таблицы genre и MPA меняются только миграцией R__reference_data.sql, поэтому снимок читается один раз
+ * и подменяется целиком через reload(). Каждая загрузка получает новую версию для ETag ответов /genres и /mpa.
+ * Жанры и рейтинги изменяемы, а хранилища прикрепляют их к фильмам, поэтому снимок держит собственные копии
+ * и наружу тоже отдает копии.
+ */
+@Slf4j
+@Component
+public class ReferenceDataRegistry {
+
+    private final GenreStorage genreStorage;
+    private final RatingStorage ratingStorage;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private final AtomicLong reloads = new AtomicLong();
+    private volatile Snapshot snapshot;
+
+    public ReferenceDataRegistry(GenreStorage genreStorage, RatingStorage ratingStorage) {
+        this.genreStorage = genreStorage;
+        this.ratingStorage = ratingStorage;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void reload() {
+        reloadLock.lock();
+        try {
+            List<Genre> genres = genreStorage.getAllGenres().stream().map(ReferenceDataRegistry::copy).toList();
+            List<Rating> ratings = ratingStorage.getAllRatings().stream().map(ReferenceDataRegistry::copy).toList();
+            Genre[] genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+            genres.forEach(genre -> genresById[genre.getId()] = genre);
+            Rating[] ratingsById = new Rating[ratings.stream().mapToInt(Rating::getId).max().orElse(0) + 1];
+            ratings.forEach(rating -> ratingsById[rating.getId()] = rating);
+            long loadedAt = System.currentTimeMillis();
+            Version version = new Version("\"" + Long.toString(loadedAt, 36) + "-" + reloads.incrementAndGet() + "\"", loadedAt);
+            snapshot = new Snapshot(genres, genresById, ratings, ratingsById, version);
+            log.info("Справочники загружены: жанров {}, рейтингов {}", genres.size(), ratings.size());
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    public List<Genre> getAllGenres() {
+        return current().genres().stream().map(ReferenceDataRegistry::copy).toList();
+    }
+
+    public Optional<Genre> findGenre(int id) {
+        Genre[] genresById = current().genresById();
+        return id >= 0 && id < genresById.length ? Optional.ofNullable(genresById[id]).map(ReferenceDataRegistry::copy) : Optional.empty();
+    }
+
+    public List<Rating> getAllRatings() {
+        return current().ratings().stream().map(ReferenceDataRegistry::copy).toList();
+    }
+
+    public Optional<Rating> findRating(int id) {
+        Rating[] ratingsById = current().ratingsById();
+        return id >= 0 && id < ratingsById.length ? Optional.ofNullable(ratingsById[id]).map(ReferenceDataRegistry::copy) : Optional.empty();
+    }
+
+    public Version version() {
+        return current().version();
+    }
+
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            reload();
+            current = snapshot;
+        }
+        return current;
+    }
+
+    private static Genre copy(Genre genre) {
+        return new Genre(genre.getId(), genre.getName());
+    }
+
+    private static Rating copy(Rating rating) {
+        return new Rating(rating.getId(), rating.getName());
+    }
+
+    private record Snapshot(List<Genre> genres, Genre[] genresById, List<Rating> ratings, Rating[] ratingsById,
+                            Version version) {
+    }
+}
@@ -0,0 +1,7 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+/**
+ * Версия данных для условных GET: значение ETag в кавычках и время последнего изменения в миллисекундах.
+ */
+public record Version(String etag, long lastModified) {
+}
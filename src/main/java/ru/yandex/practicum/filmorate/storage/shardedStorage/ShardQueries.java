@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.storage.shardedStorage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exceptions.InternalServerException;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Общие запросы шардированных хранилищ. В отличие от BaseQuery, БД (основная или шард) передается в каждый вызов;
+ * первым аргументом, как и там, идет имя запроса для метрик.
+ */
+final class ShardQueries {
+    private static final int CHUNK_SIZE = 500;
+
+    private final QueryMetrics metrics;
+
+    ShardQueries(QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    int update(String name, JdbcTemplate db, String query, Object... params) {
+        int rows = metrics.record(name, () -> db.update(query, params));
+        metrics.recordRows(name, rows);
+        return rows;
+    }
+
+    void updateOne(String name, JdbcTemplate db, String query, Object... params) {
+        if (update(name, db, query, params) == 0) {
+            throw new InternalServerException("Не удалось обновить данные");
+        }
+    }
+
+    int[] batch(String name, JdbcTemplate db, String query, List<Object[]> rows) {
+        int[] updated = metrics.record(name, () -> db.batchUpdate(query, rows));
+        metrics.recordRows(name, rows.size());
+        return updated;
+    }
+
+    static <T> void forEachChunk(List<T> items, Consumer<List<T>> query) {
+        for (int from = 0; from < items.size(); from += CHUNK_SIZE) {
+            query.accept(items.subList(from, Math.min(from + CHUNK_SIZE, items.size())));
+        }
+    }
+
+    /**
+     * Список плейсхолдеров для IN: placeholder повторяется count раз, например «?» или «(?, ?)».
+     */
+    static String placeholders(String placeholder, int count) {
+        return String.join(", ", Collections.nCopies(count, placeholder));
+    }
+}
@@ -0,0 +1,288 @@
+package ru.yandex.practicum.filmorate.storage.shardedStorage;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting.Table;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище фильмов при filmorate.storage=sharded: фильмы, жанры и films.likes_count остаются в основной БД
+ * и читаются через films, а лайк хранится в шарде поставившего его пользователя.
+ * Лайкнувшие фильм собираются параллельным запросом ко всем шардам и сливаются в один SortedLongSet.
+ * Популярные фильмы ранжируются по FilmLeaderboard из films.likes_count, поэтому запрос рейтинга не обходит шарды:
+ * с них догружаются только лайкнувшие выбранные фильмы, а LikesCountReconciler сверяет счетчики с суммой по шардам.
+ * <p>
+ * Лайк сначала пишется в шард или удаляется из него, затем меняется счетчик в основной БД; если счетчик изменить
+ * не удалось, изменение в шарде возвращается обратно. Пакет лайков так же: каждый шард пишется своей транзакцией,
+ * и при ошибке на одном из шардов или в счетчиках уже измененные шарды возвращаются к прежнему состоянию.
+ */
+public class ShardedFilmStorage implements FilmStorage {
+
+    private static final String HAS_LIKE_QUERY = "SELECT EXISTS (SELECT 1 FROM user_likes WHERE user_id = ? AND film_id = ?)";
+    private static final String FIND_EXISTING_LIKES_QUERY = "SELECT film_id, user_id FROM user_likes WHERE (film_id, user_id) IN (%s)";
+    private static final String INSERT_LIKE_QUERY = "INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)";
+    private static final String DELETE_LIKE_QUERY = "DELETE FROM user_likes WHERE film_id = ? AND user_id = ?";
+    private static final String DELETE_FILM_LIKES_QUERY = "DELETE FROM user_likes WHERE film_id = ?";
+    private static final String ADD_LIKES_QUERY = "UPDATE films SET likes_count = likes_count + ? WHERE film_id = ?";
+
+    private final JdbcTemplate jdbc;
+    private final FilmStorage films;
+    private final UserShards shards;
+    private final FilmLeaderboard leaderboard;
+    private final LikeMatrix likeMatrix;
+    private final CatalogVersions versions;
+    private final QueryMetrics metrics;
+    private final ReplicaRouting routing;
+    private final ShardQueries queries;
+
+    public ShardedFilmStorage(JdbcTemplate jdbc, FilmStorage films, UserShards shards, FilmLeaderboard leaderboard,
+                              LikeMatrix likeMatrix, CatalogVersions versions, QueryMetrics metrics,
+                              ReplicaRouting routing) {
+        this.jdbc = jdbc;
+        this.films = films;
+        this.shards = shards;
+        this.leaderboard = leaderboard;
+        this.likeMatrix = likeMatrix;
+        this.versions = versions;
+        this.metrics = metrics;
+        this.routing = routing;
+        this.queries = new ShardQueries(metrics);
+    }
+
+    @Override
+    public Collection<Film> getAllFilms(boolean withLikers) {
+        return withLikers(films.getAllFilms(false), withLikers);
+    }
+
+    @Override
+    public Collection<Film> getFilmsPage(long afterId, int limit, boolean withLikers) {
+        return withLikers(films.getFilmsPage(afterId, limit, false), withLikers);
+    }
+
+    @Override
+    public Film createFilm(Film film) {
+        return films.createFilm(film);
+    }
+
+    @Override
+    public Film updateFilm(Film film) {
+        return films.updateFilm(film);
+    }
+
+    /**
+     * Фильм удаляется из основной БД раньше, чем его лайки из шардов: оставшиеся после сбоя лайки
+     * несуществующего фильма нигде не читаются и не попадают в счетчики.
+     */
+    @Override
+    public void deleteFilm(Long filmId) {
+        films.deleteFilm(filmId);
+        String name = "film.shard.deleteFilmLikes";
+        shards.scatter(shard -> queries.update(name, shard, DELETE_FILM_LIKES_QUERY, filmId));
+    }
+
+    @Override
+    public Optional<Film> findFilmById(Long id, boolean withLikers) {
+        Optional<Film> film = films.findFilmById(id, false);
+        film.ifPresent(value -> withLikers(List.of(value), withLikers));
+        return film;
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return films.existsById(id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return films.findExistingIds(ids);
+    }
+
+    @Override
+    public boolean hasLike(Long filmId, Long userId) {
+        return metrics.record("film.shard.hasLike", () ->
+                Boolean.TRUE.equals(shards.shardFor(userId).queryForObject(HAS_LIKE_QUERY, Boolean.class, userId, filmId)));
+    }
+
+    /**
+     * Лайки раскладываются по шардам пользователей, и каждый шард проверяет свою часть.
+     */
+    @Override
+    public Set<Like> findExistingLikes(Collection<Like> likes) {
+        Set<Like> existing = ConcurrentHashMap.newKeySet();
+        String name = "film.shard.findExistingLikes";
+        shards.forEachShard(shards.partition(likes, Like::getUserId), (index, shardLikes) -> {
+            ShardQueries.forEachChunk(shardLikes, chunk -> {
+                String pairs = ShardQueries.placeholders("(?, ?)", chunk.size());
+                Object[] params = chunk.stream()
+                        .flatMap(like -> Stream.of(like.getFilmId(), like.getUserId()))
+                        .toArray();
+                metrics.run(name, () -> shards.shard(index).query(FIND_EXISTING_LIKES_QUERY.formatted(pairs), (rs) -> {
+                    existing.add(new Like(rs.getLong("film_id"), rs.getLong("user_id")));
+                }, params));
+            });
+        });
+        metrics.recordRows(name, existing.size());
+        return new HashSet<>(existing);
+    }
+
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids, boolean withLikers) {
+        return withLikers(films.findFilmsByIds(ids, false), withLikers);
+    }
+
+    @Override
+    public void addLike(Long filmId, Long userId) {
+        JdbcTemplate shard = shards.shardFor(userId);
+        queries.update("film.shard.insertLike", shard, INSERT_LIKE_QUERY, filmId, userId);
+        try {
+            queries.updateOne("film.addLikes", jdbc, ADD_LIKES_QUERY, 1, filmId);
+        } catch (RuntimeException e) {
+            queries.update("film.shard.deleteLike", shard, DELETE_LIKE_QUERY, filmId, userId);
+            throw e;
+        }
+        likeMatrix.addLike(filmId, userId);
+        likesChanged(Map.of(filmId, 1));
+    }
+
+    @Override
+    @Transactional
+    public void addLikes(Collection<Like> likes) {
+        Map<Integer, List<Like>> byShard = shards.partition(likes, Like::getUserId);
+        Set<Integer> written = ConcurrentHashMap.newKeySet();
+        Map<Long, Integer> addedByFilmId = new HashMap<>();
+        likes.forEach(like -> addedByFilmId.merge(like.getFilmId(), 1, Integer::sum));
+        try {
+            shards.forEachShard(byShard, (index, shardLikes) -> {
+                shards.inTransaction(index, () -> batch(shards.shard(index), "film.shard.insertLike", INSERT_LIKE_QUERY, shardLikes));
+                written.add(index);
+            });
+            adjustCounts(addedByFilmId);
+        } catch (RuntimeException e) {
+            shards.forEachShard(byShard, (index, shardLikes) -> {
+                if (written.contains(index)) {
+                    batch(shards.shard(index), "film.shard.deleteLike", DELETE_LIKE_QUERY, shardLikes);
+                }
+            });
+            throw e;
+        }
+        likes.forEach(like -> likeMatrix.addLike(like.getFilmId(), like.getUserId()));
+        likesChanged(addedByFilmId);
+    }
+
+    @Override
+    public void deleteLike(Long filmId, Long userId) {
+        JdbcTemplate shard = shards.shardFor(userId);
+        queries.updateOne("film.shard.deleteLike", shard, DELETE_LIKE_QUERY, filmId, userId);
+        try {
+            queries.updateOne("film.addLikes", jdbc, ADD_LIKES_QUERY, -1, filmId);
+        } catch (RuntimeException e) {
+            queries.update("film.shard.insertLike", shard, INSERT_LIKE_QUERY, filmId, userId);
+            throw e;
+        }
+        likeMatrix.removeLike(filmId, userId);
+        likesChanged(Map.of(filmId, -1));
+    }
+
+    /**
+     * Счетчики уменьшаются только на действительно удаленные лайки, и при ошибке в шарды возвращаются тоже только они.
+     */
+    @Override
+    @Transactional
+    public void deleteLikes(Collection<Like> likes) {
+        Set<Like> removed = ConcurrentHashMap.newKeySet();
+        Map<Long, Integer> removedByFilmId = new HashMap<>();
+        try {
+            shards.forEachShard(shards.partition(likes, Like::getUserId), (index, shardLikes) -> {
+                List<Like> shardRemoved = new ArrayList<>();
+                shards.inTransaction(index, () -> {
+                    int[] deleted = batch(shards.shard(index), "film.shard.deleteLike", DELETE_LIKE_QUERY, shardLikes);
+                    for (int i = 0; i < deleted.length; i++) {
+                        if (deleted[i] > 0) {
+                            shardRemoved.add(shardLikes.get(i));
+                        }
+                    }
+                });
+                removed.addAll(shardRemoved);
+            });
+            removed.forEach(like -> removedByFilmId.merge(like.getFilmId(), -1, Integer::sum));
+            adjustCounts(removedByFilmId);
+        } catch (RuntimeException e) {
+            shards.forEachShard(shards.partition(removed, Like::getUserId), (index, shardLikes) ->
+                    batch(shards.shard(index), "film.shard.insertLike", INSERT_LIKE_QUERY, shardLikes));
+            throw e;
+        }
+        removed.forEach(like -> likeMatrix.removeLike(like.getFilmId(), like.getUserId()));
+        likesChanged(removedByFilmId);
+    }
+
+    @Override
+    public List<Long> findMostLikedFilmIds(int count) {
+        return films.findMostLikedFilmIds(count);
+    }
+
+    @Override
+    public List<Long> findRecommendedFilmIds(Long userId, int count) {
+        return films.findRecommendedFilmIds(userId, count);
+    }
+
+    private <C extends Collection<Film>> C withLikers(C result, boolean withLikers) {
+        if (withLikers && !result.isEmpty()) {
+            fillLikers(result);
+        }
+        return result;
+    }
+
+    /**
+     * Каждый шард отдает лайкнувших фильмы из своих пользователей; множества разных шардов
+     * не пересекаются и сливаются слиянием отсортированных массивов.
+     */
+    private void fillLikers(Collection<Film> result) {
+        List<Long> ids = result.stream().map(Film::getId).toList();
+        Map<Long, SortedLongSet> likersByFilmId = new HashMap<>();
+        for (Map<Long, SortedLongSet> shardLikers : shards.scatter(shard -> new FilmHydrator(shard, metrics).loadLikes(ids))) {
+            shardLikers.forEach((filmId, likers) -> likersByFilmId.merge(filmId, likers, (merged, more) -> {
+                merged.addAll(more);
+                return merged;
+            }));
+        }
+        for (Film film : result) {
+            SortedLongSet likers = likersByFilmId.getOrDefault(film.getId(), new SortedLongSet());
+            film.setIdOfUsersWhoLiked(likers);
+            film.setLikesCount(likers.size());
+        }
+    }
+
+    private int[] batch(JdbcTemplate shard, String name, String query, List<Like> likes) {
+        List<Object[]> rows = likes.stream()
+                .map(like -> new Object[]{like.getFilmId(), like.getUserId()})
+                .toList();
+        return queries.batch(name, shard, query, rows);
+    }
+
+    private void adjustCounts(Map<Long, Integer> deltaByFilmId) {
+        List<Object[]> counts = deltaByFilmId.entrySet().stream()
+                .map(entry -> new Object[]{entry.getValue(), entry.getKey()})
+                .toList();
+        queries.batch("film.addLikes", jdbc, ADD_LIKES_QUERY, counts);
+    }
+
+    private void likesChanged(Map<Long, Integer> deltaByFilmId) {
+        deltaByFilmId.forEach(leaderboard::changeLikes);
+        routing.written(Table.FILMS, deltaByFilmId.keySet());
+        versions.filmsChanged(deltaByFilmId.keySet());
+    }
+}
@@ -0,0 +1,185 @@
+package ru.yandex.practicum.filmorate.storage.shardedStorage;
+
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
+import ru.yandex.practicum.filmorate.model.userModel.Status;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting.Table;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище пользователей при filmorate.storage=sharded: пользователи остаются в основной БД и читаются через users,
+ * а дружба хранится в шарде пользователя, который добавил друга. Списки друзей загружаются только с шардов
+ * запрошенных пользователей, параллельно; общие друзья и рекомендации считаются по FriendGraph.
+ * Пакет дружб пишется в каждый шард своей транзакцией, так что он атомарен в пределах шарда, но не между шардами:
+ * MERGE не отличает новую дружбу от уже существовавшей, и откатить записанное в другие шарды нельзя.
+ */
+public class ShardedUserStorage implements UserStorage {
+
+    private static final String MERGE_FRIEND_QUERY = "MERGE INTO friends (user_id, friend_id, status) KEY (user_id, friend_id) VALUES (?, ?, ?)";
+    private static final String DELETE_FRIEND_QUERY = "DELETE FROM friends WHERE (user_id = ? AND friend_id = ?)";
+    private static final String FRIEND_QUERY = "SELECT friend_id FROM friends WHERE user_id = ? AND status = 'CONFIRMED' ORDER BY friend_id";
+    private static final String ALL_FRIENDS_QUERY = "SELECT user_id, friend_id FROM friends WHERE status = 'CONFIRMED' ORDER BY user_id, friend_id";
+    private static final String FRIENDS_OF_USERS_QUERY = "SELECT user_id, friend_id FROM friends WHERE user_id IN (%s) AND status = 'CONFIRMED' ORDER BY user_id, friend_id";
+
+    private final UserDbStorage users;
+    private final UserShards shards;
+    private final FriendGraph friendGraph;
+    private final QueryMetrics metrics;
+    private final ReplicaRouting routing;
+    private final ShardQueries queries;
+
+    public ShardedUserStorage(UserDbStorage users, UserShards shards, FriendGraph friendGraph,
+                              QueryMetrics metrics, ReplicaRouting routing) {
+        this.users = users;
+        this.shards = shards;
+        this.friendGraph = friendGraph;
+        this.metrics = metrics;
+        this.routing = routing;
+        this.queries = new ShardQueries(metrics);
+    }
+
+    /**
+     * Все шарды читаются целиком параллельно: каждая строка friends нужна ровно одному пользователю из выдачи.
+     */
+    @Override
+    public Collection<User> getAllUsers() {
+        Collection<User> result = users.getAllUsers(false);
+        Map<Long, User> usersById = byId(result);
+        String name = "user.shard.allFriends";
+        shards.scatter(shard -> {
+            metrics.run(name, () -> shard.query(ALL_FRIENDS_QUERY, (rs) -> {
+                User user = usersById.get(rs.getLong("user_id"));
+                if (user != null) {
+                    user.getFriends().add(rs.getLong("friend_id"));
+                }
+            }));
+            return null;
+        });
+        return result;
+    }
+
+    @Override
+    public Collection<User> getUsersPage(long afterId, int limit) {
+        Collection<User> result = users.getUsersPage(afterId, limit, false);
+        fillFriends(result);
+        return result;
+    }
+
+    @Override
+    public User createUser(User user) {
+        return users.createUser(user);
+    }
+
+    @Override
+    public User updateUser(User user) {
+        return users.updateUser(user);
+    }
+
+    @Override
+    public Optional<User> findUserById(Long id) {
+        Optional<User> user = users.findUsersByIds(List.of(id), false).stream().findFirst();
+        user.ifPresent(value -> value.setFriends(getFriendsByUserId(id)));
+        return user;
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return users.existsById(id);
+    }
+
+    @Override
+    public Set<Long> findExistingIds(Collection<Long> ids) {
+        return users.findExistingIds(ids);
+    }
+
+    @Override
+    public List<User> findUsersByIds(List<Long> ids, boolean withFriends) {
+        List<User> result = users.findUsersByIds(ids, false);
+        if (withFriends) {
+            fillFriends(result);
+        }
+        return result;
+    }
+
+    public Set<Long> getFriendsByUserId(Long userId) {
+        return SortedLongSet.copyOf(metrics.record("user.shard.friendIds", () ->
+                shards.shardFor(userId).queryForList(FRIEND_QUERY, Long.class, userId)));
+    }
+
+    @Override
+    public void addFriend(Long userId, Long friendId) {
+        queries.update("user.shard.mergeFriend", shards.shardFor(userId), MERGE_FRIEND_QUERY,
+                userId, friendId, Status.CONFIRMED.name());
+        friendGraph.addFriend(userId, friendId);
+        routing.written(Table.USERS, userId);
+    }
+
+    @Override
+    public void addFriends(Collection<Friendship> friendships) {
+        String confirmed = Status.CONFIRMED.name();
+        String name = "user.shard.mergeFriend";
+        shards.forEachShard(shards.partition(friendships, Friendship::getUserId), (index, shardFriendships) -> {
+            List<Object[]> rows = shardFriendships.stream()
+                    .map(friendship -> new Object[]{friendship.getUserId(), friendship.getFriendId(), confirmed})
+                    .toList();
+            shards.inTransaction(index, () -> queries.batch(name, shards.shard(index), MERGE_FRIEND_QUERY, rows));
+        });
+        friendships.forEach(friendship -> friendGraph.addFriend(friendship.getUserId(), friendship.getFriendId()));
+        routing.written(Table.USERS, friendships.stream().map(Friendship::getUserId).collect(Collectors.toSet()));
+    }
+
+    @Override
+    public void deleteFriend(Long userId, Long friendId) {
+        queries.update("user.shard.deleteFriend", shards.shardFor(userId), DELETE_FRIEND_QUERY, userId, friendId);
+        friendGraph.removeFriend(userId, friendId);
+        routing.written(Table.USERS, userId);
+    }
+
+    @Override
+    public Collection<User> showFriends(Long userId, boolean withFriends) {
+        return findUsersByIds(List.copyOf(getFriendsByUserId(userId)), withFriends);
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(Long userId, Long friendId, boolean withFriends) {
+        return showCommonFriends(List.of(userId, friendId), withFriends);
+    }
+
+    @Override
+    public Collection<User> showCommonFriends(List<Long> userIds, boolean withFriends) {
+        return findUsersByIds(friendGraph.commonFriends(userIds), withFriends);
+    }
+
+    @Override
+    public List<Long> findSuggestedFriendIds(Long userId, int count) {
+        return friendGraph.suggest(userId, count);
+    }
+
+    /**
+     * Пользователи раскладываются по шардам, и каждый шард заполняет друзей только своих пользователей,
+     * поэтому параллельные запросы не меняют одни и те же списки.
+     */
+    private void fillFriends(Collection<User> result) {
+        Map<Long, User> usersById = byId(result);
+        String name = "user.shard.friendsOfUsers";
+        shards.forEachShard(shards.partition(usersById.keySet(), Long::longValue), (index, ids) ->
+                ShardQueries.forEachChunk(ids, chunk -> metrics.run(name, () ->
+                        shards.shard(index).query(FRIENDS_OF_USERS_QUERY.formatted(ShardQueries.placeholders("?", chunk.size())), (rs) -> {
+                            usersById.get(rs.getLong("user_id")).getFriends().add(rs.getLong("friend_id"));
+                        }, chunk.toArray()))));
+    }
+
+    private static Map<Long, User> byId(Collection<User> result) {
+        return result.stream().collect(Collectors.toMap(User::getId, Function.identity(), (first, second) -> first));
+    }
+}
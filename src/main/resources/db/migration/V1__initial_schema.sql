@@ -1,3 +1,6 @@
+-- Схема до перехода на миграции. Базы, созданные через schema.sql, получают базовую версию 0
+-- и проходят этот скрипт повторно, поэтому все команды в нем идемпотентны.
+
 CREATE TABLE IF NOT EXISTS MPA (
     mpa_id INTEGER PRIMARY KEY,
     name VARCHAR
@@ -10,9 +13,13 @@ CREATE TABLE IF NOT EXISTS films (
     release_date DATE,
     duration INTEGER,
     mpa_id INTEGER,
+    likes_count INTEGER DEFAULT 0 NOT NULL,
     FOREIGN KEY (mpa_id) REFERENCES MPA(mpa_id)
 );
 
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER DEFAULT 0 NOT NULL;
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+
 CREATE TABLE IF NOT EXISTS genre (
     genre_id INTEGER PRIMARY KEY,
     genre VARCHAR
@@ -0,0 +1,14 @@
+-- Ключи связующих таблиц того же типа, что и films.film_id и users.user_id:
+-- соединения и поиск по ним идут без приведения INTEGER к BIGINT.
+ALTER TABLE film_genre ALTER COLUMN film_id SET DATA TYPE BIGINT;
+ALTER TABLE user_likes ALTER COLUMN film_id SET DATA TYPE BIGINT;
+ALTER TABLE user_likes ALTER COLUMN user_id SET DATA TYPE BIGINT;
+ALTER TABLE friends ALTER COLUMN user_id SET DATA TYPE BIGINT;
+ALTER TABLE friends ALTER COLUMN friend_id SET DATA TYPE BIGINT;
+
+-- Лайки фильма: первичный ключ начинается с user_id, поэтому выборка по film_id
+-- шла через индекс внешнего ключа с сортировкой; составной индекс отдает пары уже упорядоченными.
+CREATE INDEX IF NOT EXISTS user_likes_film_id_idx ON user_likes (film_id, user_id);
+
+-- Обратный поиск дружбы: кто добавил пользователя в друзья.
+CREATE INDEX IF NOT EXISTS friends_friend_id_idx ON friends (friend_id, user_id);
@@ -0,0 +1,20 @@
+-- Схема шарда при filmorate.storage=sharded: только лайки и дружба, разложенные по user_id.
+-- Фильмы и пользователи остаются в основной БД, поэтому внешних ключей на них здесь нет:
+-- лайки удаленного фильма хранилище удаляет на всех шардах само.
+
+CREATE TABLE IF NOT EXISTS user_likes (
+    film_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    PRIMARY KEY (user_id, film_id)
+);
+
+CREATE INDEX IF NOT EXISTS user_likes_film_id_idx ON user_likes (film_id, user_id);
+
+CREATE TABLE IF NOT EXISTS friends (
+    user_id BIGINT NOT NULL,
+    friend_id BIGINT NOT NULL,
+    status VARCHAR,
+    PRIMARY KEY (user_id, friend_id)
+);
+
+CREATE INDEX IF NOT EXISTS friends_friend_id_idx ON friends (friend_id, user_id);
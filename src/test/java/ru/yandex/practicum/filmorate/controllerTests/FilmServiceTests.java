@@ -1,41 +1,91 @@
 package ru.yandex.practicum.filmorate.controllerTests;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.transaction.TestTransaction;
+import ru.yandex.practicum.filmorate.controller.PopularFilmsResponseCache;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
+import ru.yandex.practicum.filmorate.exceptions.ServiceUnavailableException;
 import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkFailure;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
 import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
 import ru.yandex.practicum.filmorate.model.filmModel.Rating;
 import ru.yandex.practicum.filmorate.model.userModel.User;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBehind;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.FilmStorageConfig;
+import ru.yandex.practicum.filmorate.storage.UserShardsConfig;
+import ru.yandex.practicum.filmorate.storage.UserStorageConfig;
+import ru.yandex.practicum.filmorate.storage.cacheStorage.CachingFilmStorage;
+import ru.yandex.practicum.filmorate.storage.cacheStorage.CachingUserStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.DatabaseCheckpoint;
 import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
 import ru.yandex.practicum.filmorate.storage.dbStorage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.LikesCountReconciler;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
 import ru.yandex.practicum.filmorate.storage.dbStorage.RatingDbStorage;
 import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.GenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.RatingRowMapper;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+import ru.yandex.practicum.filmorate.storage.index.Version;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({FilmDbStorage.class, FilmRowMapper.class, FilmService.class, UserService.class, RatingDbStorage.class, GenreDbStorage.class, UserDbStorage.class, UserRowMapper.class, RatingRowMapper.class, GenreRowMapper.class})
+@Import({FilmDbStorage.class, CachingFilmStorage.class, FilmHydrator.class, FilmRowMapper.class, FilmService.class, UserService.class, RatingDbStorage.class, GenreDbStorage.class, UserDbStorage.class, FriendGraph.class, CachingUserStorage.class, UserRowMapper.class, UserWithFriendsExtractor.class, RatingRowMapper.class, GenreRowMapper.class, FilmLeaderboard.class, LikeMatrix.class, LikesCountReconciler.class, CatalogVersions.class, ReferenceDataRegistry.class, QueryMetrics.class, ReplicaRouting.class, UserShardsConfig.class, SimpleMeterRegistry.class, FilmStorageConfig.class, UserStorageConfig.class})
 class FilmServiceTests {
     private Long filmId;
     private final FilmService filmService;
     private final UserService userService;
+    private final LikesCountReconciler likesCountReconciler;
+    private final JdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+    private final CachingFilmStorage cachingFilmStorage;
+    private final LikeMatrix likeMatrix;
 
     @BeforeEach
     void setUp() {
@@ -49,6 +99,17 @@ class FilmServiceTests {
         Assertions.assertEquals(filmService.getFilmById(filmId).getName(), "Titanic");
     }
 
+    @Test
+    public void cachedFilmIsCopiedOnReadTest() {
+        Film cached = cachingFilmStorage.findFilmById(filmId, false).orElseThrow();
+        cached.setName("Изменено");
+        cached.getRating().setName("Изменено");
+        Film reread = cachingFilmStorage.findFilmById(filmId, false).orElseThrow();
+        Assertions.assertEquals("Titanic", reread.getName());
+        Assertions.assertEquals("G", reread.getRating().getName());
+        Assertions.assertEquals("Titanic", cachingFilmStorage.findFilmsByIds(List.of(filmId), false).get(0).getName());
+    }
+
     @Test
     public void updateFilmTest() {
         filmService.updateFilm(new Film(filmId, "Общество Мертвых Поэтов", "Легенда", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
@@ -86,6 +147,29 @@ class FilmServiceTests {
         Assertions.assertTrue(filmService.getFilmById(filmId).getIdOfUsersWhoLiked().contains(user.getId()));
     }
 
+    @Test
+    public void compactIdSetsKeepJsonShapeTest() throws IOException {
+        User second = userService.createUser(new User("sobaka@mail.ru", "second", "Petr", LocalDate.of(1998, 8, 9)));
+        User first = userService.createUser(new User("sobaka@mail.ru", "first", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, first.getId());
+        filmService.addLike(filmId, second.getId());
+        userService.addFriend(first.getId(), second.getId());
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+        Film film = filmService.getFilmById(filmId);
+        assertThat(film.getIdOfUsersWhoLiked()).isInstanceOf(SortedLongSet.class);
+        String filmJson = mapper.writeValueAsString(film);
+        assertThat(filmJson).contains("\"idOfUsersWhoLiked\":[" + second.getId() + "," + first.getId() + "]");
+        Film parsedFilm = mapper.readValue(filmJson, Film.class);
+        assertThat(parsedFilm.getIdOfUsersWhoLiked())
+                .isInstanceOf(SortedLongSet.class)
+                .isEqualTo(Set.of(first.getId(), second.getId()));
+
+        String userJson = mapper.writeValueAsString(userService.findUserById(first.getId()));
+        assertThat(userJson).contains("\"friends\":[" + second.getId() + "]");
+        assertThat(mapper.readValue(userJson, User.class).getFriends()).containsExactly(second.getId());
+    }
+
     @Test
     public void deleteLikeTest() {
         User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
@@ -118,4 +202,255 @@ class FilmServiceTests {
                 .isNotEmpty()
                 .hasSizeLessThanOrEqualTo(2);
     }
+
+    @Test
+    public void showMostLikedFilmsOrderTest() {
+        Film film2 = filmService.createFilm(new Film("Фильм2", "Описание2", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        User user1 = userService.createUser(new User("Чел1", "Пчел1", "Pasha", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("Чел2", "Пчел2", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(film2.getId(), user1.getId());
+        filmService.addLike(film2.getId(), user2.getId());
+        filmService.addLike(filmId, user1.getId());
+        List<Long> popular = filmService.showMostLikedFilms(2).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(film2.getId(), filmId), popular);
+
+        filmService.deleteLike(film2.getId(), user1.getId());
+        filmService.deleteLike(film2.getId(), user2.getId());
+        popular = filmService.showMostLikedFilms(1).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(filmId), popular);
+    }
+
+    @Test
+    public void likesCountReconcileTest() {
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        Assertions.assertEquals(1, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId));
+        Assertions.assertEquals(0, likesCountReconciler.reconcile());
+
+        jdbc.update("UPDATE films SET likes_count = 5 WHERE film_id = ?", filmId);
+        Assertions.assertEquals(1, likesCountReconciler.reconcile());
+        Assertions.assertEquals(1, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId));
+    }
+
+    @Test
+    public void likesCountProjectionTest() throws IOException {
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+
+        Film projection = filmService.getFilmById(filmId, false);
+        Assertions.assertEquals(1, projection.getLikesCount());
+        Assertions.assertNull(projection.getIdOfUsersWhoLiked());
+        String json = mapper.writeValueAsString(projection);
+        assertThat(json).contains("\"likesCount\":1").doesNotContain("idOfUsersWhoLiked");
+
+        Film popular = filmService.showMostLikedFilms(1, false).iterator().next();
+        Assertions.assertEquals(filmId, popular.getId());
+        Assertions.assertEquals(1, popular.getLikesCount());
+        Assertions.assertNull(popular.getIdOfUsersWhoLiked());
+        assertThat(filmService.getFilmsPage(0, 10, false)).allMatch(film -> film.getIdOfUsersWhoLiked() == null);
+
+        Film full = filmService.getFilmById(filmId, true);
+        Assertions.assertEquals(1, full.getLikesCount());
+        Assertions.assertEquals(Set.of(user.getId()), full.getIdOfUsersWhoLiked());
+    }
+
+    @Test
+    public void getFilmsPageTest() {
+        Film film2 = filmService.createFilm(new Film("Фильм2", "Описание2", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        Film film3 = filmService.createFilm(new Film("Фильм3", "Описание3", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        List<Long> firstPage = filmService.getFilmsPage(0, 2).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(filmId, film2.getId()), firstPage);
+        List<Long> secondPage = filmService.getFilmsPage(firstPage.get(1), 2).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(film3.getId()), secondPage);
+        Assertions.assertThrows(ValidateException.class, () -> filmService.getFilmsPage(0, 0));
+
+        List<Film> streamed = new ArrayList<>();
+        filmService.streamAllFilms(filmId, false, streamed::add);
+        Assertions.assertEquals(List.of(film2, film3), streamed);
+    }
+
+    @Test
+    public void filmVersionChangesAfterTransactionTest() {
+        Version catalogBefore = filmService.getFilmsVersion();
+        Version filmBefore = filmService.getFilmVersion(filmId);
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        Assertions.assertEquals(filmBefore, filmService.getFilmVersion(filmId));
+        Assertions.assertEquals(catalogBefore, filmService.getFilmsVersion());
+
+        TestTransaction.end();
+        Version filmAfter = filmService.getFilmVersion(filmId);
+        Assertions.assertNotEquals(filmBefore.etag(), filmAfter.etag());
+        Assertions.assertEquals(filmAfter, filmService.getFilmsVersion());
+        Assertions.assertEquals(filmAfter, filmService.getFilmVersion(filmId));
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.getFilmVersion(filmId + 1_000_000));
+    }
+
+    @Test
+    public void popularFilmsResponseCacheTest() throws IOException {
+        ObjectMapper mapper = new ObjectMapper().findAndRegisterModules();
+        PopularFilmsResponseCache cache = new PopularFilmsResponseCache(filmService, mapper, 16, Duration.ofMinutes(1),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        byte[] popular = cache.get(10, false);
+        Assertions.assertSame(popular, cache.get(10, false));
+        Assertions.assertNotSame(popular, cache.get(5, false));
+        Film[] films = mapper.readValue(popular, Film[].class);
+        Assertions.assertEquals(filmId, films[0].getId());
+        assertThat(new String(popular, StandardCharsets.UTF_8)).doesNotContain("idOfUsersWhoLiked");
+        assertThat(new String(cache.get(10, true), StandardCharsets.UTF_8)).contains("\"idOfUsersWhoLiked\":[]");
+
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        Assertions.assertSame(popular, cache.get(10, false));
+        TestTransaction.end();
+        byte[] reencoded = cache.get(10, false);
+        Assertions.assertNotSame(popular, reencoded);
+        Assertions.assertEquals(0, mapper.readValue(reencoded, Film[].class).length);
+    }
+
+    @Test
+    public void filmCacheInvalidationTest() {
+        Film cached = filmService.getFilmById(filmId, false);
+        Assertions.assertSame(cached, filmService.getFilmById(filmId, false));
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        Film reloaded = filmService.getFilmById(filmId, false);
+        Assertions.assertNotSame(cached, reloaded);
+        Assertions.assertEquals(1, reloaded.getLikesCount());
+    }
+
+    @Test
+    public void createFilmWithUnknownReferenceDataTest() {
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.createFilm(new Film("Фильм", "Описание", LocalDate.of(2000, 6, 21), 120, new Rating(99, "X"))));
+        Film film = new Film("Фильм", "Описание", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G"));
+        film.getGenres().add(new Genre(-1, "Нет"));
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.createFilm(film));
+    }
+
+    @Test
+    public void addLikeTwiceTest() {
+        User user = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        Assertions.assertThrows(ValidateException.class, () -> filmService.addLike(filmId, user.getId()));
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.addLike(filmId + 1000, user.getId()));
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.deleteLike(filmId, user.getId() + 1000));
+    }
+
+    @Test
+    public void addLikesBulkTest() {
+        Film film2 = filmService.createFilm(new Film("Фильм2", "Описание2", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        User user1 = userService.createUser(new User("Чел1", "Пчел1", "Pasha", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("Чел2", "Пчел2", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user1.getId());
+
+        BulkResult result = filmService.addLikes(Arrays.asList(
+                new Like(film2.getId(), user1.getId()),
+                new Like(film2.getId(), user2.getId()),
+                new Like(filmId, user1.getId()),
+                new Like(film2.getId(), user2.getId()),
+                new Like(filmId + 1000, user1.getId()),
+                null,
+                new Like(filmId, user2.getId())));
+
+        Assertions.assertEquals(7, result.getReceived());
+        Assertions.assertEquals(3, result.getApplied());
+        Assertions.assertEquals(List.of(2, 3, 4, 5), result.getFailures().stream().map(BulkFailure::getIndex).toList());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), filmService.getFilmById(film2.getId()).getIdOfUsersWhoLiked());
+        Assertions.assertEquals(2, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId));
+        Assertions.assertEquals(List.of(filmId, film2.getId()), filmService.showMostLikedFilms(2).stream().map(Film::getId).toList());
+    }
+
+    @Test
+    public void queryMetricsTest() {
+        Assertions.assertTrue(meterRegistry.get("filmorate.db.query")
+                .tags("query", "film.insert", "exception", "none").timer().count() > 0);
+        long findAll = queryCount("film.findAll");
+        long genres = queryCount("film.genres");
+        double rows = rowsTotal("film.findAll");
+        filmService.getAllFilms();
+        Assertions.assertEquals(findAll + 1, queryCount("film.findAll"));
+        Assertions.assertEquals(genres + 1, queryCount("film.genres"));
+        Assertions.assertEquals(rows + 1, rowsTotal("film.findAll"));
+    }
+
+    @Test
+    public void getRecommendationsTest() {
+        Film film2 = filmService.createFilm(new Film("Фильм2", "Описание2", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        Film film3 = filmService.createFilm(new Film("Фильм3", "Описание3", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        Film film4 = filmService.createFilm(new Film("Фильм4", "Описание4", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        User user = userService.createUser(new User("Чел1", "Пчел1", "Pasha", LocalDate.of(1998, 8, 9)));
+        User close = userService.createUser(new User("Чел2", "Пчел2", "Pasha", LocalDate.of(1998, 8, 9)));
+        User far = userService.createUser(new User("Чел3", "Пчел3", "Pasha", LocalDate.of(1998, 8, 9)));
+        filmService.addLike(filmId, user.getId());
+        filmService.addLike(film2.getId(), user.getId());
+        filmService.addLike(filmId, close.getId());
+        filmService.addLike(film2.getId(), close.getId());
+        filmService.addLike(film3.getId(), close.getId());
+        filmService.addLike(filmId, far.getId());
+        filmService.addLike(film4.getId(), far.getId());
+
+        List<Long> recommended = filmService.getRecommendations(user.getId(), 10).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(film3.getId(), film4.getId()), recommended);
+
+        filmService.addLike(film3.getId(), user.getId());
+        recommended = filmService.getRecommendations(user.getId(), 10).stream().map(Film::getId).toList();
+        Assertions.assertEquals(List.of(film4.getId()), recommended);
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.getRecommendations(user.getId() + 1000, 10));
+        Assertions.assertThrows(ValidateException.class, () -> filmService.getRecommendations(user.getId(), 0));
+        Assertions.assertThrows(ValidateException.class, () -> filmService.getRecommendations(user.getId(), 1001));
+    }
+
+    @Test
+    public void likeWriteBehindTest(@TempDir Path dir) throws IOException {
+        Film film2 = filmService.createFilm(new Film("Фильм2", "Описание2", LocalDate.of(2000, 6, 21), 120, new Rating(1, "G")));
+        User user1 = userService.createUser(new User("Чел1", "Пчел1", "Pasha", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("Чел2", "Пчел2", "Pasha", LocalDate.of(1998, 8, 9)));
+        Path journal = dir.resolve("likes.journal");
+        DatabaseCheckpoint checkpoint = new DatabaseCheckpoint(jdbc, QueryMetrics.NOOP);
+        LikeWriteBehind writeBehind = new LikeWriteBehind(cachingFilmStorage, likeMatrix, checkpoint, journal, 2, 3, 1000, Duration.ZERO,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+        writeBehind.addLike(filmId, user1.getId());
+        Assertions.assertThrows(ValidateException.class, () -> writeBehind.addLike(filmId, user1.getId()));
+        writeBehind.addLike(filmId, user2.getId());
+        Assertions.assertThrows(ServiceUnavailableException.class, () -> writeBehind.addLike(film2.getId(), user1.getId()));
+        writeBehind.deleteLike(filmId, user2.getId());
+        Assertions.assertEquals(1, writeBehind.pendingCount());
+        Assertions.assertFalse(filmService.getFilmById(filmId).getIdOfUsersWhoLiked().contains(user1.getId()));
+
+        LikeWriteBehind recovered = new LikeWriteBehind(cachingFilmStorage, likeMatrix, checkpoint, journal, 2, 3, 1000, Duration.ZERO,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        recovered.recover();
+        Assertions.assertEquals(1, recovered.pendingCount());
+
+        writeBehind.flush();
+        Assertions.assertEquals(0, writeBehind.pendingCount());
+        Assertions.assertEquals(0, Files.size(journal));
+        Assertions.assertEquals(Set.of(user1.getId()), filmService.getFilmById(filmId).getIdOfUsersWhoLiked());
+        Assertions.assertEquals(1, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId));
+
+        writeBehind.deleteLike(filmId, user1.getId());
+        writeBehind.flush();
+        Assertions.assertEquals(0, writeBehind.pendingCount());
+        Assertions.assertEquals(List.of("- " + filmId + " " + user1.getId()), Files.readAllLines(journal));
+        Assertions.assertTrue(filmService.getFilmById(filmId).getIdOfUsersWhoLiked().isEmpty());
+        Assertions.assertEquals(0, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = ?", Integer.class, filmId));
+
+        writeBehind.addLike(filmId, user2.getId());
+        Map<Like, String> rejected = writeBehind.addLikes(List.of(new Like(filmId, user1.getId()), new Like(filmId, user2.getId())));
+        Assertions.assertEquals(Set.of(new Like(filmId, user2.getId())), rejected.keySet());
+        writeBehind.flush();
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), filmService.getFilmById(filmId).getIdOfUsersWhoLiked());
+    }
+
+    private long queryCount(String query) {
+        Timer timer = meterRegistry.find("filmorate.db.query").tag("query", query).timer();
+        return timer == null ? 0 : timer.count();
+    }
+
+    private double rowsTotal(String query) {
+        DistributionSummary summary = meterRegistry.find("filmorate.db.query.rows").tag("query", query).summary();
+        return summary == null ? 0 : summary.totalAmount();
+    }
 }
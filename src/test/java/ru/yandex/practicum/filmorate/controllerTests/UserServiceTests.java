@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.controllerTests;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -8,19 +10,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.exceptions.ValidateException;
+import ru.yandex.practicum.filmorate.model.SortedLongSet;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkFailure;
+import ru.yandex.practicum.filmorate.model.bulkModel.BulkResult;
+import ru.yandex.practicum.filmorate.model.userModel.Friendship;
 import ru.yandex.practicum.filmorate.model.userModel.User;
 import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.UserShardsConfig;
+import ru.yandex.practicum.filmorate.storage.UserStorageConfig;
+import ru.yandex.practicum.filmorate.storage.cacheStorage.CachingUserStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
 import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
 import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({UserDbStorage.class, UserRowMapper.class, UserService.class})
+@Import({UserDbStorage.class, FriendGraph.class, CachingUserStorage.class, UserRowMapper.class, UserWithFriendsExtractor.class, UserService.class, QueryMetrics.class, ReplicaRouting.class, UserShardsConfig.class, UserStorageConfig.class})
 
 public class UserServiceTests {
 
@@ -50,6 +67,30 @@ public class UserServiceTests {
         Assertions.assertEquals(userService.findUserById(user1.getId()).getName(), "pyatochock");
     }
 
+    @Test
+    public void createUserWithNullFriendsTest() throws JsonProcessingException {
+        User user = new ObjectMapper().findAndRegisterModules().readValue(
+                "{\"email\":\"kot@mail.ru\",\"login\":\"kot\",\"birthday\":\"1998-08-09\",\"friends\":null}", User.class);
+        Assertions.assertTrue(user.getFriends().isEmpty());
+        Assertions.assertTrue(userService.findUserById(userService.createUser(user).getId()).getFriends().isEmpty());
+    }
+
+    @Test
+    public void createUserWithNullFriendIdsTest() throws JsonProcessingException {
+        User user = new ObjectMapper().findAndRegisterModules().readValue(
+                "{\"email\":\"kot@mail.ru\",\"login\":\"kot\",\"birthday\":\"1998-08-09\",\"friends\":[null, 3, null]}", User.class);
+        Assertions.assertEquals(Set.of(3L), user.getFriends());
+    }
+
+    @Test
+    public void setFriendsKeepsCopyTest() {
+        SortedLongSet friends = SortedLongSet.of(1, 2);
+        User user = new User("kot@mail.ru", "kot", "Kot", LocalDate.of(1998, 8, 9));
+        user.setFriends(friends);
+        friends.add(3L);
+        Assertions.assertEquals(Set.of(1L, 2L), user.getFriends());
+    }
+
     @Test
     public void getAllUsersTest() {
         User user1 = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "", LocalDate.of(1998, 8, 9)));
@@ -86,4 +127,92 @@ public class UserServiceTests {
         Assertions.assertEquals(friends.get(0).getLogin(), "pyatochock");
     }
 
-}
\ No newline at end of file
+    @Test
+    public void getUsersPageTest() {
+        User user1 = userService.createUser(new User("sobaka@mail.ru", "pyatochock", "Pavel", LocalDate.of(1998, 8, 9)));
+        userService.addFriend(userId, user1.getId());
+        List<User> page = new ArrayList<>(userService.getUsersPage(userId - 1, 1));
+        Assertions.assertEquals(1, page.size());
+        Assertions.assertEquals(userId, page.get(0).getId());
+        Assertions.assertTrue(page.get(0).getFriends().contains(user1.getId()));
+        Assertions.assertEquals(List.of(user1), new ArrayList<>(userService.getUsersPage(userId, 10)));
+    }
+
+    @Test
+    public void showCommonFriendsTest() {
+        User user1 = userService.createUser(new User("sobaka@mail.ru", "friend1", "Pavel", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("sobaka@mail.ru", "friend2", "Petr", LocalDate.of(1998, 8, 9)));
+        User common = userService.createUser(new User("sobaka@mail.ru", "common", "Ivan", LocalDate.of(1998, 8, 9)));
+        userService.addFriend(user1.getId(), common.getId());
+        userService.addFriend(user2.getId(), common.getId());
+        userService.addFriend(common.getId(), userId);
+
+        List<User> commonFriends = new ArrayList<>(userService.showCommonFriends(user1.getId(), user2.getId()));
+        Assertions.assertEquals(List.of(common), commonFriends);
+        Assertions.assertTrue(commonFriends.get(0).getFriends().isEmpty());
+
+        commonFriends = new ArrayList<>(userService.showCommonFriends(user1.getId(), user2.getId(), true));
+        Assertions.assertEquals(Set.of(userId), commonFriends.get(0).getFriends());
+        Assertions.assertEquals(Set.of(userId), userService.showFriends(user1.getId(), true).iterator().next().getFriends());
+    }
+
+    @Test
+    public void updateUnknownUserTest() {
+        Assertions.assertThrows(NotFoundException.class, () -> userService.updateUser(new User(userId + 1000, "sobaka@mail.ru", "pyatochock", "Andrey", LocalDate.of(1998, 8, 9))));
+        Assertions.assertThrows(NotFoundException.class, () -> userService.showFriends(userId + 1000));
+    }
+
+    @Test
+    public void addFriendsBulkTest() {
+        User user1 = userService.createUser(new User("sobaka@mail.ru", "friend1", "Pavel", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("sobaka@mail.ru", "friend2", "Petr", LocalDate.of(1998, 8, 9)));
+        Assertions.assertTrue(userService.findUserById(userId).getFriends().isEmpty());
+
+        BulkResult result = userService.addFriends(Arrays.asList(
+                new Friendship(userId, user1.getId()),
+                new Friendship(userId, user2.getId()),
+                new Friendship(userId, userId),
+                new Friendship(userId, user1.getId()),
+                new Friendship(user1.getId(), userId + 1000),
+                new Friendship(null, userId)));
+
+        Assertions.assertEquals(2, result.getApplied());
+        Assertions.assertEquals(List.of(2, 3, 4, 5), result.getFailures().stream().map(BulkFailure::getIndex).toList());
+        Assertions.assertEquals(Set.of(user1.getId(), user2.getId()), userService.findUserById(userId).getFriends());
+    }
+
+    @Test
+    public void friendSuggestionsTest() {
+        User user1 = userService.createUser(new User("sobaka@mail.ru", "friend1", "Pavel", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("sobaka@mail.ru", "friend2", "Petr", LocalDate.of(1998, 8, 9)));
+        userService.addFriend(userId, user1.getId());
+        userService.addFriends(List.of(new Friendship(user1.getId(), user2.getId()), new Friendship(user1.getId(), userId)));
+
+        List<User> suggestions = new ArrayList<>(userService.getFriendSuggestions(userId, 10));
+        Assertions.assertEquals(List.of(user2.getId()), suggestions.stream().map(User::getId).toList());
+        Assertions.assertEquals("Petr", suggestions.get(0).getName());
+        Assertions.assertTrue(userService.getFriendSuggestions(user2.getId(), 10).isEmpty());
+        Assertions.assertThrows(NotFoundException.class, () -> userService.getFriendSuggestions(userId + 1000, 10));
+        Assertions.assertThrows(ValidateException.class, () -> userService.getFriendSuggestions(userId, -1));
+        Assertions.assertThrows(ValidateException.class, () -> userService.getFriendSuggestions(userId, 1001));
+    }
+
+    @Test
+    public void showCommonFriendsOfSeveralUsersTest() {
+        User user1 = userService.createUser(new User("sobaka@mail.ru", "friend1", "Pavel", LocalDate.of(1998, 8, 9)));
+        User user2 = userService.createUser(new User("sobaka@mail.ru", "friend2", "Petr", LocalDate.of(1998, 8, 9)));
+        User common = userService.createUser(new User("sobaka@mail.ru", "common", "Oleg", LocalDate.of(1998, 8, 9)));
+        userService.addFriends(List.of(
+                new Friendship(userId, common.getId()),
+                new Friendship(user1.getId(), common.getId()),
+                new Friendship(user2.getId(), common.getId()),
+                new Friendship(user2.getId(), user1.getId()),
+                new Friendship(common.getId(), userId)));
+
+        List<User> commonFriends = new ArrayList<>(userService.showCommonFriends(List.of(userId, user1.getId(), user2.getId()), true));
+        Assertions.assertEquals(List.of(common.getId()), commonFriends.stream().map(User::getId).toList());
+        Assertions.assertEquals(Set.of(userId), commonFriends.get(0).getFriends());
+        Assertions.assertThrows(ValidateException.class, () -> userService.showCommonFriends(List.of(userId, userId), false));
+        Assertions.assertThrows(NotFoundException.class, () -> userService.showCommonFriends(List.of(userId, userId + 1000), false));
+    }
+}
@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.UserShardsConfig;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({FilmDbStorage.class, FilmHydrator.class, FilmRowMapper.class, UserDbStorage.class, FriendGraph.class, UserRowMapper.class, UserWithFriendsExtractor.class, FilmLeaderboard.class, LikeMatrix.class, CatalogVersions.class, QueryMetrics.class, ReplicaRouting.class, UserShardsConfig.class})
+class DbStorageTests extends StorageContractTests {
+
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbc;
+
+    @Override
+    protected FilmStorage filmStorage() {
+        return filmStorage;
+    }
+
+    @Override
+    protected UserStorage userStorage() {
+        return userStorage;
+    }
+
+    @Test
+    void friendSuggestionsSkipHubFriendsBeyondEdgeLimit() {
+        User user = newUser("user");
+        User quiet = newUser("quiet");
+        User hub = newUser("hub");
+        User viaQuiet = newUser("viaQuiet");
+        User viaHub = newUser("viaHub");
+        userStorage.addFriend(user.getId(), quiet.getId());
+        userStorage.addFriend(user.getId(), hub.getId());
+        userStorage.addFriend(quiet.getId(), viaQuiet.getId());
+        userStorage.addFriend(hub.getId(), viaHub.getId());
+        userStorage.addFriend(hub.getId(), viaQuiet.getId());
+
+        FriendGraph limited = new FriendGraph(jdbc, 2);
+        limited.rebuild();
+
+        assertThat(limited.suggest(user.getId(), 10)).containsExactly(viaQuiet.getId());
+        assertThat(userStorage.findSuggestedFriendIds(user.getId(), 10)).containsExactly(viaQuiet.getId(), viaHub.getId());
+    }
+
+    @Test
+    void pendingFriendshipIsSkippedByEveryFriendQuery() {
+        User user = newUser("user");
+        User pending = newUser("pending");
+        jdbc.update("INSERT INTO friends (user_id, friend_id, status) VALUES (?, ?, 'PENDING')", user.getId(), pending.getId());
+        FriendGraph graph = new FriendGraph(jdbc, 100);
+        graph.rebuild();
+
+        assertThat(userStorage.findUserById(user.getId()).orElseThrow().getFriends()).isEmpty();
+        assertThat(userStorage.getAllUsers()).allSatisfy(found -> assertThat(found.getFriends()).isEmpty());
+        assertThat(userStorage.getUsersPage(0, 10)).allSatisfy(found -> assertThat(found.getFriends()).isEmpty());
+        assertThat(userStorage.showFriends(user.getId(), true)).isEmpty();
+        assertThat(graph.commonFriends(List.of(user.getId(), user.getId()))).isEmpty();
+    }
+}
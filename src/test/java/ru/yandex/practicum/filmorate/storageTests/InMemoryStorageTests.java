@@ -0,0 +1,85 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.storage.dbStorage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.RatingDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.RatingRowMapper;
+import ru.yandex.practicum.filmorate.storage.inMemoryStorage.InMemoryFilmStorage;
+import ru.yandex.practicum.filmorate.storage.inMemoryStorage.InMemoryUserStorage;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.ReferenceDataRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Import({GenreDbStorage.class, RatingDbStorage.class, GenreRowMapper.class, RatingRowMapper.class, ReferenceDataRegistry.class, QueryMetrics.class, ReplicaRouting.class})
+class InMemoryStorageTests extends StorageContractTests {
+
+    private final ReferenceDataRegistry referenceData;
+    private InMemoryFilmStorage filmStorage;
+    private InMemoryUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        filmStorage = new InMemoryFilmStorage(referenceData, new CatalogVersions());
+        userStorage = new InMemoryUserStorage();
+    }
+
+    @Override
+    protected FilmStorage filmStorage() {
+        return filmStorage;
+    }
+
+    @Override
+    protected UserStorage userStorage() {
+        return userStorage;
+    }
+
+    @Test
+    void concurrentLikesAndReadsStayConsistent() throws Exception {
+        Film hit = newFilm("Hit");
+        Film other = newFilm("Other");
+        filmStorage.addLike(other.getId(), 0L);
+        int threads = 8;
+        int likesPerThread = 500;
+        try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                long firstUserId = 1 + (long) t * likesPerThread;
+                futures.add(executor.submit(() -> {
+                    for (long userId = firstUserId; userId < firstUserId + likesPerThread; userId++) {
+                        filmStorage.addLike(hit.getId(), userId);
+                        assertThat(filmStorage.findMostLikedFilmIds(2)).containsExactly(hit.getId(), other.getId());
+                        assertThat(filmStorage.findFilmById(hit.getId()).orElseThrow().getIdOfUsersWhoLiked()).isNotEmpty();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+
+        assertThat(filmStorage.findFilmById(hit.getId()).orElseThrow().getIdOfUsersWhoLiked())
+                .hasSize(threads * likesPerThread);
+    }
+}
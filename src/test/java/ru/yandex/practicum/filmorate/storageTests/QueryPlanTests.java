@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Планы всех запросов хранилищ по схеме после миграций: полный просмотр таблицы допустим
+ * только у запросов, которые и должны читать таблицу целиком.
+ */
+@JdbcTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class QueryPlanTests {
+
+    private static final List<Class<?>> STORAGES = List.of(FilmDbStorage.class, FilmHydrator.class, UserDbStorage.class);
+    private static final Pattern TABLE_SCAN = Pattern.compile("PUBLIC\\.(\\w+)\\.tableScan");
+    private static final Map<String, String> FULL_SCANS = Map.of(
+            "FilmDbStorage.FIND_ALL_QUERY", "FILMS",
+            "UserDbStorage.FIND_ALL_QUERY", "USERS",
+            "UserDbStorage.ALL_FRIENDS_QUERY", "FRIENDS");
+    private static final Map<String, String> ROW_PLACEHOLDERS = Map.of(
+            "FilmDbStorage.INSERT_GENRES_QUERY", "(?, ?)",
+            "FilmDbStorage.FIND_EXISTING_LIKES_QUERY", "(?, ?)");
+
+    private final JdbcTemplate jdbc;
+
+    @Test
+    public void everyQueryUsesIndexTest() {
+        Map<String, String> queries = queries();
+        assertThat(queries).containsKeys(FULL_SCANS.keySet().toArray(String[]::new));
+
+        queries.forEach((name, sql) -> {
+            String plan = explain(name, sql);
+            Matcher scan = TABLE_SCAN.matcher(plan);
+            while (scan.find()) {
+                assertThat(scan.group(1))
+                        .as("%s читает таблицу целиком:%n%s", name, plan)
+                        .isEqualTo(FULL_SCANS.get(name));
+            }
+        });
+    }
+
+    @Test
+    public void filmLikesReadInIndexOrderTest() {
+        String plan = explain("FilmHydrator.LIKES_QUERY", queries().get("FilmHydrator.LIKES_QUERY"));
+
+        assertThat(plan).contains("USER_LIKES_FILM_ID_IDX").contains("index sorted");
+    }
+
+    @Test
+    public void keyColumnsAreBigintTest() {
+        List<String> types = jdbc.queryForList("""
+                SELECT DISTINCT data_type FROM information_schema.columns
+                WHERE table_schema = 'PUBLIC'
+                  AND (table_name, column_name) IN (('FILM_GENRE', 'FILM_ID'), ('USER_LIKES', 'FILM_ID'),
+                      ('USER_LIKES', 'USER_ID'), ('FRIENDS', 'USER_ID'), ('FRIENDS', 'FRIEND_ID'))
+                """, String.class);
+
+        assertThat(types).containsExactly("BIGINT");
+    }
+
+    private String explain(String name, String sql) {
+        String query = sql.replace("%s", ROW_PLACEHOLDERS.getOrDefault(name, "?"));
+        return String.join("\n", jdbc.queryForList("EXPLAIN " + query, String.class));
+    }
+
+    /**
+     * Все строковые константы *_QUERY хранилищ с именами вида FilmDbStorage.FIND_ALL_QUERY.
+     */
+    private static Map<String, String> queries() {
+        Map<String, String> queries = new TreeMap<>();
+        for (Class<?> storage : STORAGES) {
+            for (Field field : storage.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class
+                        && field.getName().endsWith("_QUERY")) {
+                    field.setAccessible(true);
+                    try {
+                        queries.put(storage.getSimpleName() + "." + field.getName(), (String) field.get(null));
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            }
+        }
+        return queries;
+    }
+}
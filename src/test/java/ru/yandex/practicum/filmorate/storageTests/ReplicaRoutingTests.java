@@ -0,0 +1,210 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.ReplicaDataSourceConfig;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.GenreDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRoutingDataSource;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.GenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Маршрутизация чтений на две встроенные H2: основную и реплику. Репликация имитируется копированием таблиц
+ * основной БД в реплику, пока replicate() не вызван, реплика отстает.
+ * Хранилища с max-lag в минуту должны читать недавно измененные строки с основной БД, а с нулевым — с реплики.
+ */
+class ReplicaRoutingTests {
+
+    private static final List<String> TABLES = List.of("users", "films", "film_genre", "user_likes", "friends");
+
+    private HikariDataSource primary;
+    private HikariDataSource replica;
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private FilmDbStorage filmStorage;
+    private UserDbStorage userStorage;
+    private FilmDbStorage laggingFilmStorage;
+    private UserDbStorage laggingUserStorage;
+    private GenreDbStorage genreStorage;
+
+    @BeforeEach
+    void setUp() {
+        String name = "replica" + System.nanoTime();
+        primary = database("jdbc:h2:mem:" + name + "-primary;DB_CLOSE_DELAY=-1");
+        replica = database("jdbc:h2:mem:" + name + "-replica;DB_CLOSE_DELAY=-1");
+        primaryJdbc = new JdbcTemplate(primary);
+        replicaJdbc = new JdbcTemplate(replica);
+        JdbcTemplate jdbc = new JdbcTemplate(new ReplicaRoutingDataSource(primary, replica));
+
+        ReplicaRouting routing = new ReplicaRouting(true, Duration.ofMinutes(1));
+        ReplicaRouting ignoringLag = new ReplicaRouting(true, Duration.ZERO);
+        filmStorage = filmStorage(jdbc, routing);
+        userStorage = userStorage(jdbc, routing);
+        laggingFilmStorage = filmStorage(jdbc, ignoringLag);
+        laggingUserStorage = userStorage(jdbc, ignoringLag);
+        genreStorage = new GenreDbStorage(jdbc, new GenreRowMapper(), QueryMetrics.NOOP, routing);
+    }
+
+    @AfterEach
+    void tearDown() {
+        primary.close();
+        replica.close();
+    }
+
+    @Test
+    void readsGoToReplicaWhenNothingWasWritten() {
+        replicaJdbc.update("INSERT INTO films (name, description, release_date, duration, mpa_id) VALUES ('Replica', 'description', DATE '2000-01-01', 90, 1)");
+
+        assertThat(filmStorage.getAllFilms(false)).extracting(Film::getName).containsExactly("Replica");
+        assertThat(genreStorage.getAllGenres()).hasSize(6);
+        assertThat(primaryJdbc.queryForObject("SELECT COUNT(*) FROM films", Integer.class)).isZero();
+    }
+
+    @Test
+    void likeIsReadFromPrimaryUntilReplicaCatchesUp() {
+        Film film = newFilm();
+        User user = newUser("liker");
+        replicate();
+
+        filmStorage.addLike(film.getId(), user.getId());
+
+        assertThat(filmStorage.findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked()).containsExactly(user.getId());
+        assertThat(filmStorage.findFilmsByIds(List.of(film.getId()), false)).extracting(Film::getLikesCount).containsExactly(1L);
+        assertThat(filmStorage.getAllFilms(false)).extracting(Film::getLikesCount).containsExactly(1L);
+        assertThat(laggingFilmStorage.findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked()).isEmpty();
+
+        replicate();
+        assertThat(laggingFilmStorage.findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked()).containsExactly(user.getId());
+    }
+
+    @Test
+    void friendIsReadFromPrimaryUntilReplicaCatchesUp() {
+        User user = newUser("user");
+        User friend = newUser("friend");
+        replicate();
+
+        userStorage.addFriend(user.getId(), friend.getId());
+
+        assertThat(userStorage.showFriends(user.getId())).extracting(User::getId).containsExactly(friend.getId());
+        assertThat(userStorage.findUserById(user.getId()).orElseThrow().getFriends()).containsExactly(friend.getId());
+        assertThat(laggingUserStorage.showFriends(user.getId())).isEmpty();
+
+        replicate();
+        assertThat(laggingUserStorage.showFriends(user.getId())).extracting(User::getId).containsExactly(friend.getId());
+    }
+
+    @Test
+    void changedFriendIsReadFromPrimaryUntilReplicaCatchesUp() {
+        User user = newUser("user");
+        User friend = newUser("friend");
+        userStorage.addFriend(user.getId(), friend.getId());
+        replicate();
+        ReplicaRouting routing = new ReplicaRouting(true, Duration.ofMinutes(1));
+        UserDbStorage storage = userStorage(new JdbcTemplate(new ReplicaRoutingDataSource(primary, replica)), routing);
+
+        friend.setName("renamed");
+        storage.updateUser(friend);
+
+        assertThat(storage.showFriends(user.getId())).extracting(User::getName).containsExactly("renamed");
+        assertThat(laggingUserStorage.showFriends(user.getId())).extracting(User::getName).containsExactly("friend");
+    }
+
+    @Test
+    void existenceChecksGoToPrimary() {
+        Film film = laggingFilmStorage.createFilm(new Film("Film", "description", LocalDate.of(2000, 1, 1), 120, new Rating(1, null)));
+
+        assertThat(laggingFilmStorage.findFilmById(film.getId())).isEmpty();
+        assertThat(laggingFilmStorage.existsById(film.getId())).isTrue();
+    }
+
+    @Test
+    void configRoutesBetweenPrimaryAndReplica() {
+        new ApplicationContextRunner()
+                .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class))
+                .withUserConfiguration(ReplicaDataSourceConfig.class)
+                .withPropertyValues("filmorate.datasource.replica.enabled=true",
+                        "spring.datasource.url=" + primary.getJdbcUrl(),
+                        "spring.datasource.username=sa",
+                        "spring.datasource.hikari.maximum-pool-size=2",
+                        "filmorate.datasource.replica.url=" + replica.getJdbcUrl())
+                .run(context -> {
+                    assertThat(context.getBean(DataSource.class)).isInstanceOf(ReplicaRoutingDataSource.class);
+                    HikariDataSource replicaPool = context.getBean("replicaDataSource", HikariDataSource.class);
+                    assertThat(replicaPool.getJdbcUrl()).isEqualTo(replica.getJdbcUrl());
+                    assertThat(replicaPool.getMaximumPoolSize()).isEqualTo(2);
+                });
+    }
+
+    private Film newFilm() {
+        return filmStorage.createFilm(new Film("Film", "description", LocalDate.of(2000, 1, 1), 120, new Rating(1, null)));
+    }
+
+    private User newUser(String login) {
+        return userStorage.createUser(new User(login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1)));
+    }
+
+    /**
+     * Переносит в реплику текущее содержимое таблиц основной БД.
+     */
+    private void replicate() {
+        replicaJdbc.execute("SET REFERENTIAL_INTEGRITY FALSE");
+        for (String table : TABLES) {
+            replicaJdbc.update("DELETE FROM " + table);
+            for (Map<String, Object> row : primaryJdbc.queryForList("SELECT * FROM " + table)) {
+                String columns = String.join(", ", row.keySet());
+                String values = String.join(", ", row.keySet().stream().map(column -> "?").toList());
+                replicaJdbc.update("INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")", row.values().toArray());
+            }
+        }
+        replicaJdbc.execute("SET REFERENTIAL_INTEGRITY TRUE");
+    }
+
+    private static HikariDataSource database(String url) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername("sa");
+        dataSource.setMaximumPoolSize(2);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+        return dataSource;
+    }
+
+    private static FilmDbStorage filmStorage(JdbcTemplate jdbc, ReplicaRouting routing) {
+        return new FilmDbStorage(jdbc, new FilmRowMapper(), new FilmHydrator(jdbc, QueryMetrics.NOOP),
+                new FilmLeaderboard(jdbc), new LikeMatrix(jdbc, 20), new CatalogVersions(), QueryMetrics.NOOP, routing);
+    }
+
+    private static UserDbStorage userStorage(JdbcTemplate jdbc, ReplicaRouting routing) {
+        UserRowMapper mapper = new UserRowMapper();
+        return new UserDbStorage(jdbc, mapper, new UserWithFriendsExtractor(mapper), new FriendGraph(jdbc, 100_000),
+                QueryMetrics.NOOP, routing);
+    }
+}
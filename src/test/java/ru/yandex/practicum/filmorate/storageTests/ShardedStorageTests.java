@@ -0,0 +1,171 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exceptions.InternalServerException;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.FilmHydrator;
+import ru.yandex.practicum.filmorate.storage.dbStorage.LikesCountReconciler;
+import ru.yandex.practicum.filmorate.storage.dbStorage.QueryMetrics;
+import ru.yandex.practicum.filmorate.storage.dbStorage.ReplicaRouting;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserDbStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.UserShards;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserRowMapper;
+import ru.yandex.practicum.filmorate.storage.dbStorage.mappers.UserWithFriendsExtractor;
+import ru.yandex.practicum.filmorate.storage.index.CatalogVersions;
+import ru.yandex.practicum.filmorate.storage.index.FilmLeaderboard;
+import ru.yandex.practicum.filmorate.storage.index.FriendGraph;
+import ru.yandex.practicum.filmorate.storage.index.LikeMatrix;
+import ru.yandex.practicum.filmorate.storage.shardedStorage.ShardedFilmStorage;
+import ru.yandex.practicum.filmorate.storage.shardedStorage.ShardedUserStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Контракт хранилищ при лайках и дружбе, разложенных по двум шардам: основная БД и шарды — отдельные встроенные H2.
+ * Spring здесь не поднимается, поэтому @Transactional контракта не действует, и каждый тест получает новые базы.
+ */
+class ShardedStorageTests extends StorageContractTests {
+
+    private HikariDataSource main;
+    private UserShards shards;
+    private JdbcTemplate mainJdbc;
+    private FilmLeaderboard leaderboard;
+    private LikesCountReconciler reconciler;
+    private ShardedFilmStorage filmStorage;
+    private ShardedUserStorage userStorage;
+
+    @BeforeEach
+    void setUp() {
+        String name = "sharded" + System.nanoTime();
+        main = new HikariDataSource();
+        main.setJdbcUrl("jdbc:h2:mem:" + name + "-main;DB_CLOSE_DELAY=-1");
+        main.setUsername("sa");
+        main.setMaximumPoolSize(2);
+        Flyway.configure().dataSource(main).load().migrate();
+        shards = UserShards.connect(List.of("jdbc:h2:mem:" + name + "-shard0;DB_CLOSE_DELAY=-1",
+                "jdbc:h2:mem:" + name + "-shard1;DB_CLOSE_DELAY=-1"), "sa", "", 2);
+
+        mainJdbc = new JdbcTemplate(main);
+        ReplicaRouting routing = ReplicaRouting.PRIMARY_ONLY;
+        CatalogVersions versions = new CatalogVersions();
+        leaderboard = new FilmLeaderboard(mainJdbc);
+        LikeMatrix likeMatrix = new LikeMatrix(shards, 20);
+        FriendGraph friendGraph = new FriendGraph(shards, 100_000);
+        FilmDbStorage films = new FilmDbStorage(mainJdbc, new FilmRowMapper(), new FilmHydrator(mainJdbc, QueryMetrics.NOOP),
+                leaderboard, likeMatrix, versions, QueryMetrics.NOOP, routing);
+        UserRowMapper mapper = new UserRowMapper();
+        UserDbStorage users = new UserDbStorage(mainJdbc, mapper, new UserWithFriendsExtractor(mapper), friendGraph,
+                QueryMetrics.NOOP, routing);
+        filmStorage = new ShardedFilmStorage(mainJdbc, films, shards, leaderboard, likeMatrix, versions, QueryMetrics.NOOP, routing);
+        userStorage = new ShardedUserStorage(users, shards, friendGraph, QueryMetrics.NOOP, routing);
+        reconciler = new LikesCountReconciler(mainJdbc, shards, leaderboard, versions);
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.close();
+        main.close();
+    }
+
+    @Override
+    protected FilmStorage filmStorage() {
+        return filmStorage;
+    }
+
+    @Override
+    protected UserStorage userStorage() {
+        return userStorage;
+    }
+
+    @Test
+    void likesAndFriendsAreStoredInShardOfUser() {
+        Film film = newFilm("Film");
+        User hub = newUser("hub");
+        List<User> likers = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            User user = newUser("user" + i);
+            likers.add(user);
+            filmStorage.addLike(film.getId(), user.getId());
+            userStorage.addFriend(user.getId(), hub.getId());
+        }
+
+        for (int index = 0; index < shards.count(); index++) {
+            List<Long> likedBy = shards.shard(index).queryForList("SELECT user_id FROM user_likes", Long.class);
+            List<Long> friendOf = shards.shard(index).queryForList("SELECT user_id FROM friends", Long.class);
+            int shard = index;
+            assertThat(likedBy).isNotEmpty().allMatch(userId -> shards.shardOf(userId) == shard);
+            assertThat(friendOf).containsExactlyInAnyOrderElementsOf(likedBy);
+        }
+        assertThat(mainJdbc.queryForObject("SELECT COUNT(*) FROM user_likes", Integer.class)).isZero();
+        assertThat(filmStorage.findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked())
+                .containsExactlyElementsOf(likers.stream().map(User::getId).toList());
+        assertThat(filmStorage.findFilmById(film.getId(), false).orElseThrow().getLikesCount()).isEqualTo(10);
+        assertThat(userStorage.getAllUsers())
+                .filteredOn(user -> !user.getId().equals(hub.getId()))
+                .allSatisfy(user -> assertThat(user.getFriends()).containsExactly(hub.getId()));
+    }
+
+    @Test
+    void failedBulkLikesAreRemovedFromAllShards() {
+        Film film = newFilm("Film");
+        List<Like> likes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            likes.add(new Like(film.getId(), newUser("user" + i).getId()));
+        }
+        Like duplicate = likes.get(0);
+        shards.shardFor(duplicate.getUserId())
+                .update("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)", duplicate.getFilmId(), duplicate.getUserId());
+
+        assertThatThrownBy(() -> filmStorage.addLikes(likes)).isInstanceOf(DataAccessException.class);
+
+        assertThat(filmStorage.findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked())
+                .containsExactly(duplicate.getUserId());
+        assertThat(filmStorage.findFilmById(film.getId(), false).orElseThrow().getLikesCount()).isZero();
+    }
+
+    @Test
+    void deletedLikeIsRestoredWhenCounterFails() {
+        long userId = newUser("user").getId();
+        long missingFilmId = 9999L;
+        JdbcTemplate shard = shards.shardFor(userId);
+        shard.update("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)", missingFilmId, userId);
+
+        assertThatThrownBy(() -> filmStorage.deleteLike(missingFilmId, userId)).isInstanceOf(InternalServerException.class);
+
+        assertThat(shard.queryForList("SELECT user_id FROM user_likes WHERE film_id = ?", Long.class, missingFilmId))
+                .containsExactly(userId);
+    }
+
+    @Test
+    void reconcilerSumsLikesOverShards() {
+        Film film = newFilm("Film");
+        Film other = newFilm("Other");
+        filmStorage.addLike(other.getId(), newUser("liker").getId());
+        for (int i = 0; i < 6; i++) {
+            long userId = newUser("user" + i).getId();
+            shards.shardFor(userId).update("INSERT INTO user_likes (film_id, user_id) VALUES (?, ?)", film.getId(), userId);
+        }
+
+        assertThat(reconciler.reconcile()).isEqualTo(1);
+
+        assertThat(filmStorage.findFilmById(film.getId(), false).orElseThrow().getLikesCount()).isEqualTo(6);
+        assertThat(filmStorage.findMostLikedFilmIds(2)).containsExactly(film.getId(), other.getId());
+        assertThat(reconciler.reconcile()).isZero();
+    }
+}
@@ -0,0 +1,284 @@
+package ru.yandex.practicum.filmorate.storageTests;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.filmModel.Film;
+import ru.yandex.practicum.filmorate.model.filmModel.Genre;
+import ru.yandex.practicum.filmorate.model.filmModel.Like;
+import ru.yandex.practicum.filmorate.model.filmModel.Rating;
+import ru.yandex.practicum.filmorate.model.userModel.User;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.dbStorage.interfaces.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Общий контракт FilmStorage и UserStorage: одни и те же проверки выполняются для хранилища в БД и в памяти.
+ * Транзакционность объявлена здесь: @Transactional из @JdbcTest наследника не распространяется на методы этого класса.
+ */
+@Transactional
+abstract class StorageContractTests {
+
+    protected abstract FilmStorage filmStorage();
+
+    protected abstract UserStorage userStorage();
+
+    protected Film newFilm(String name, Genre... genres) {
+        Film film = new Film(name, "description", LocalDate.of(2000, 1, 1), 120, new Rating(1, null));
+        film.setGenres(new LinkedHashSet<>(List.of(genres)));
+        return filmStorage().createFilm(film);
+    }
+
+    protected User newUser(String login) {
+        return userStorage().createUser(new User(login + "@mail.ru", login, login, LocalDate.of(1990, 1, 1)));
+    }
+
+    @Test
+    void createdFilmIsFoundWithReferenceNames() {
+        Film film = newFilm("Film", new Genre(2, null), new Genre(1, null));
+
+        Film found = filmStorage().findFilmById(film.getId()).orElseThrow();
+
+        assertThat(found.getName()).isEqualTo("Film");
+        assertThat(found.getRating().getName()).isEqualTo("G");
+        assertThat(found.getGenres()).extracting(Genre::getId).containsExactly(1, 2);
+        assertThat(found.getGenres()).extracting(Genre::getName).containsExactly("Комедия", "Драма");
+        assertThat(filmStorage().existsById(film.getId())).isTrue();
+    }
+
+    @Test
+    void createdFilmsGetDistinctIncreasingIds() {
+        Film first = newFilm("First");
+        Film second = newFilm("Second");
+
+        assertThat(second.getId()).isGreaterThan(first.getId());
+        assertThat(filmStorage().getFilmsPage(first.getId() - 1, 10))
+                .extracting(Film::getId)
+                .containsExactly(first.getId(), second.getId());
+    }
+
+    @Test
+    void allFilmsKeepGenresAndLikersOfEveryFilm() {
+        Film first = newFilm("First", new Genre(1, null), new Genre(2, null));
+        Film second = newFilm("Second", new Genre(3, null));
+        User alice = newUser("alice");
+        User bob = newUser("bob");
+        filmStorage().addLike(first.getId(), alice.getId());
+        filmStorage().addLike(first.getId(), bob.getId());
+        filmStorage().addLike(second.getId(), bob.getId());
+
+        List<Film> films = filmStorage().getAllFilms().stream()
+                .filter(film -> film.getId().equals(first.getId()) || film.getId().equals(second.getId()))
+                .sorted(Comparator.comparingLong(Film::getId))
+                .toList();
+
+        assertThat(films).extracting(Film::getId).containsExactly(first.getId(), second.getId());
+        assertThat(films.get(0).getGenres()).extracting(Genre::getId).containsExactly(1, 2);
+        assertThat(films.get(0).getIdOfUsersWhoLiked()).containsExactly(alice.getId(), bob.getId());
+        assertThat(films.get(0).getLikesCount()).isEqualTo(2);
+        assertThat(films.get(1).getGenres()).extracting(Genre::getId).containsExactly(3);
+        assertThat(films.get(1).getIdOfUsersWhoLiked()).containsExactly(bob.getId());
+    }
+
+    @Test
+    void updateKeepsLikes() {
+        Film film = newFilm("Film");
+        User user = newUser("liker");
+        filmStorage().addLike(film.getId(), user.getId());
+
+        Film changed = new Film(film.getId(), "Renamed", "description", LocalDate.of(2000, 1, 1), 90, new Rating(2, null));
+        filmStorage().updateFilm(changed);
+
+        Film found = filmStorage().findFilmById(film.getId()).orElseThrow();
+        assertThat(found.getName()).isEqualTo("Renamed");
+        assertThat(found.getRating().getName()).isEqualTo("PG");
+        assertThat(found.getIdOfUsersWhoLiked()).containsExactly(user.getId());
+    }
+
+    @Test
+    void likesAreAddedAndRemoved() {
+        Film film = newFilm("Film");
+        User first = newUser("first");
+        User second = newUser("second");
+
+        filmStorage().addLike(film.getId(), first.getId());
+        filmStorage().addLikes(List.of(new Like(film.getId(), second.getId())));
+        assertThat(filmStorage().hasLike(film.getId(), first.getId())).isTrue();
+        assertThat(filmStorage().findExistingLikes(List.of(new Like(film.getId(), first.getId()),
+                new Like(film.getId(), second.getId())))).hasSize(2);
+
+        filmStorage().deleteLike(film.getId(), first.getId());
+        filmStorage().deleteLikes(List.of(new Like(film.getId(), second.getId())));
+        assertThat(filmStorage().hasLike(film.getId(), first.getId())).isFalse();
+        assertThat(filmStorage().findFilmById(film.getId()).orElseThrow().getIdOfUsersWhoLiked()).isEmpty();
+    }
+
+    @Test
+    void projectionCarriesLikesCountWithoutLikers() {
+        Film film = newFilm("Film");
+        filmStorage().addLike(film.getId(), newUser("first").getId());
+        filmStorage().addLike(film.getId(), newUser("second").getId());
+
+        Film projection = filmStorage().findFilmById(film.getId(), false).orElseThrow();
+        assertThat(projection.getLikesCount()).isEqualTo(2);
+        assertThat(projection.getIdOfUsersWhoLiked()).isNull();
+        assertThat(filmStorage().findFilmsByIds(List.of(film.getId()), false))
+                .extracting(Film::getLikesCount)
+                .containsExactly(2L);
+        assertThat(filmStorage().findFilmById(film.getId(), true).orElseThrow().getIdOfUsersWhoLiked()).hasSize(2);
+    }
+
+    @Test
+    void mostLikedFilmsAreOrderedByLikesThenId() {
+        Film one = newFilm("One");
+        Film two = newFilm("Two");
+        Film three = newFilm("Three");
+        User first = newUser("first");
+        User second = newUser("second");
+        filmStorage().addLike(two.getId(), first.getId());
+        filmStorage().addLike(two.getId(), second.getId());
+        filmStorage().addLike(one.getId(), first.getId());
+        filmStorage().addLike(three.getId(), second.getId());
+
+        assertThat(filmStorage().findMostLikedFilmIds(3)).containsExactly(two.getId(), one.getId(), three.getId());
+
+        filmStorage().deleteLike(two.getId(), first.getId());
+        filmStorage().deleteLike(two.getId(), second.getId());
+        assertThat(filmStorage().showMostLikedFilms(2)).extracting(Film::getId)
+                .containsExactly(one.getId(), three.getId());
+    }
+
+    @Test
+    void deletedFilmDisappears() {
+        Film film = newFilm("Film");
+        User user = newUser("liker");
+        filmStorage().addLike(film.getId(), user.getId());
+
+        filmStorage().deleteFilm(film.getId());
+
+        assertThat(filmStorage().findFilmById(film.getId())).isEmpty();
+        assertThat(filmStorage().existsById(film.getId())).isFalse();
+        assertThat(filmStorage().findMostLikedFilmIds(100)).doesNotContain(film.getId());
+        assertThat(filmStorage().findExistingIds(Set.of(film.getId()))).isEmpty();
+    }
+
+    @Test
+    void createdUserIsFoundAndUpdated() {
+        User user = newUser("user");
+
+        userStorage().updateUser(new User(user.getId(), "new@mail.ru", "user", "New name", LocalDate.of(1990, 1, 1)));
+
+        User found = userStorage().findUserById(user.getId()).orElseThrow();
+        assertThat(found.getName()).isEqualTo("New name");
+        assertThat(found.getEmail()).isEqualTo("new@mail.ru");
+        assertThat(userStorage().existsById(user.getId())).isTrue();
+        assertThat(userStorage().findExistingIds(Set.of(user.getId(), user.getId() + 1000))).containsExactly(user.getId());
+    }
+
+    @Test
+    void friendshipIsOneDirectional() {
+        User user = newUser("user");
+        User friend = newUser("friend");
+
+        userStorage().addFriend(user.getId(), friend.getId());
+
+        assertThat(userStorage().findUserById(user.getId()).orElseThrow().getFriends()).containsExactly(friend.getId());
+        assertThat(userStorage().findUserById(friend.getId()).orElseThrow().getFriends()).isEmpty();
+    }
+
+    @Test
+    void showFriendsReturnsFriendsOrderedById() {
+        User user = newUser("user");
+        User second = newUser("second");
+        User first = newUser("first");
+        userStorage().addFriend(user.getId(), first.getId());
+        userStorage().addFriend(user.getId(), second.getId());
+        userStorage().addFriend(second.getId(), user.getId());
+
+        assertThat(userStorage().showFriends(user.getId())).extracting(User::getId)
+                .containsExactly(second.getId(), first.getId());
+        assertThat(userStorage().showFriends(user.getId(), true))
+                .filteredOn(friend -> friend.getId().equals(second.getId()))
+                .singleElement()
+                .satisfies(friend -> assertThat(friend.getFriends()).containsExactly(user.getId()));
+
+        userStorage().deleteFriend(user.getId(), first.getId());
+        assertThat(userStorage().showFriends(user.getId())).extracting(User::getId).containsExactly(second.getId());
+    }
+
+    @Test
+    void showCommonFriendsReturnsIntersection() {
+        User user = newUser("user");
+        User other = newUser("other");
+        User common = newUser("common");
+        User own = newUser("own");
+        userStorage().addFriend(user.getId(), common.getId());
+        userStorage().addFriend(user.getId(), own.getId());
+        userStorage().addFriend(other.getId(), common.getId());
+
+        assertThat(userStorage().showCommonFriends(user.getId(), other.getId())).extracting(User::getId)
+                .containsExactly(common.getId());
+    }
+
+    @Test
+    void suggestedFriendsRankedByMutualFriends() {
+        User user = newUser("user");
+        User first = newUser("first");
+        User second = newUser("second");
+        User popular = newUser("popular");
+        User rare = newUser("rare");
+        userStorage().addFriend(user.getId(), first.getId());
+        userStorage().addFriend(user.getId(), second.getId());
+        userStorage().addFriend(first.getId(), second.getId());
+        userStorage().addFriend(first.getId(), user.getId());
+        userStorage().addFriend(first.getId(), rare.getId());
+        userStorage().addFriend(first.getId(), popular.getId());
+        userStorage().addFriend(second.getId(), popular.getId());
+
+        assertThat(userStorage().findSuggestedFriendIds(user.getId(), 10)).containsExactly(popular.getId(), rare.getId());
+        assertThat(userStorage().findSuggestedFriendIds(user.getId(), 1)).containsExactly(popular.getId());
+
+        userStorage().deleteFriend(second.getId(), popular.getId());
+        userStorage().addFriend(user.getId(), rare.getId());
+        assertThat(userStorage().findSuggestedFriendIds(user.getId(), 10)).containsExactly(popular.getId());
+        assertThat(userStorage().findUsersByIds(List.of(rare.getId(), user.getId()), false))
+                .extracting(User::getLogin).containsExactly("rare", "user");
+    }
+
+    @Test
+    void showCommonFriendsIntersectsSeveralUsers() {
+        User hub = newUser("hub");
+        User small = newUser("small");
+        User third = newUser("third");
+        List<User> friends = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            User friend = newUser("friend" + i);
+            friends.add(friend);
+            userStorage().addFriend(hub.getId(), friend.getId());
+        }
+        userStorage().addFriend(small.getId(), friends.get(3).getId());
+        userStorage().addFriend(small.getId(), friends.get(37).getId());
+        userStorage().addFriend(small.getId(), third.getId());
+        userStorage().addFriend(third.getId(), friends.get(37).getId());
+        userStorage().addFriend(third.getId(), friends.get(3).getId());
+        userStorage().addFriend(third.getId(), friends.get(20).getId());
+
+        assertThat(userStorage().showCommonFriends(hub.getId(), small.getId())).extracting(User::getId)
+                .containsExactly(friends.get(3).getId(), friends.get(37).getId());
+        assertThat(userStorage().showCommonFriends(List.of(hub.getId(), small.getId(), third.getId()), true))
+                .extracting(User::getId)
+                .containsExactly(friends.get(3).getId(), friends.get(37).getId());
+
+        userStorage().deleteFriend(third.getId(), friends.get(3).getId());
+        assertThat(userStorage().showCommonFriends(List.of(third.getId(), hub.getId(), small.getId()), false))
+                .extracting(User::getId)
+                .containsExactly(friends.get(37).getId());
+    }
+}
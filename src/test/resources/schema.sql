@@ -1,52 +0,0 @@
-CREATE TABLE IF NOT EXISTS MPA (
-    mpa_id INTEGER PRIMARY KEY,
-    name VARCHAR
-);
-
-CREATE TABLE IF NOT EXISTS films (
-    film_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    name VARCHAR,
-    description VARCHAR,
-    release_date DATE,
-    duration INTEGER,
-    mpa_id INTEGER,
-    FOREIGN KEY (mpa_id) REFERENCES MPA(mpa_id)
-);
-
-CREATE TABLE IF NOT EXISTS genre (
-    genre_id INTEGER PRIMARY KEY,
-    genre VARCHAR
-);
-
-CREATE TABLE IF NOT EXISTS film_genre (
-    film_id INTEGER,
-    genre_id INTEGER,
-    PRIMARY KEY (film_id, genre_id),
-    FOREIGN KEY (film_id) REFERENCES films(film_id) ON DELETE CASCADE,
-    FOREIGN KEY (genre_id) REFERENCES genre(genre_id)
-);
-
-CREATE TABLE IF NOT EXISTS users (
-    user_id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    email VARCHAR,
-    login VARCHAR,
-    name VARCHAR,
-    birthday DATE
-);
-
-CREATE TABLE IF NOT EXISTS user_likes (
-    film_id INTEGER,
-    user_id INTEGER,
-    PRIMARY KEY (user_id, film_id),
-    FOREIGN KEY (film_id) REFERENCES films(film_id) ON DELETE CASCADE,
-    FOREIGN KEY (user_id) REFERENCES users(user_id)
-);
-
-CREATE TABLE IF NOT EXISTS friends (
-    user_id INTEGER,
-    friend_id INTEGER,
-    status VARCHAR,
-    PRIMARY KEY (user_id, friend_id),
-    FOREIGN KEY (user_id) REFERENCES users(user_id),
-    FOREIGN KEY (friend_id) REFERENCES users(user_id)
-);